@@ -11,6 +11,8 @@ import com.fizzed.jne.NativeTarget;
 import com.fizzed.jne.OperatingSystem;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -100,6 +102,21 @@ public class blaze extends PublicBlaze {
             .run();
     }
 
+    @Task(group="project")
+    public void benchmark() throws Exception {
+        exec("mvn", "-pl", "nats-benchmarks", "-am", "-DskipTests", "package")
+            .run();
+
+        // any extra arguments are passed along to jmh (e.g. a benchmark name regex)
+        final List<String> args = new ArrayList<>();
+        args.add("-jar");
+        args.add("nats-benchmarks/target/benchmarks.jar");
+        this.config.value("args").ifPresent(v -> args.addAll(Arrays.asList(v.trim().split("\\s+"))));
+
+        exec("java", args.toArray())
+            .run();
+    }
+
     @Override
     protected void projectRelease() throws Exception {
         this.mvnReleaseWithNoTests();
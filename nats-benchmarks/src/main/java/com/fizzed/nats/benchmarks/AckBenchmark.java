@@ -0,0 +1,121 @@
+package com.fizzed.nats.benchmarks;
+
+import com.fizzed.nats.core.NatsHelper;
+import com.fizzed.nats.core.NatsReliableMessage;
+import com.fizzed.nats.core.NatsReliableStreamPublisher;
+import com.fizzed.nats.core.NatsReliableStreamPullSubscriber;
+import io.nats.NatsServerRunner;
+import io.nats.client.Connection;
+import io.nats.client.Message;
+import io.nats.client.impl.NatsMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.fizzed.nats.benchmarks.NatsBenchmarkHelper.*;
+
+/**
+ * Benchmarks NatsReliableMessage.ack(), ackSync() and ackAsync(). Before each invocation a fixed number of messages
+ * are published and fetched, then the benchmark acks all of them, so the reported time is per ack.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AckBenchmark {
+
+    static private final int MESSAGES = 500;
+    static private final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private NatsServerRunner nats;
+    private Connection connection;
+    private NatsReliableStreamPublisher publisher;
+    private NatsReliableStreamPullSubscriber subscriber;
+    private List<Message> messages;
+    private List<NatsReliableMessage> received;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.nats = startNatsServer();
+        this.connection = connectNats(this.nats);
+
+        final String subjectName = randomSubjectName();
+        NatsHelper.createWorkQueueStream(this.connection, randomStreamName(), subjectName);
+
+        this.publisher = new NatsReliableStreamPublisher(this.connection)
+            .start();
+
+        this.subscriber = new NatsReliableStreamPullSubscriber(this.connection)
+            .setSubject(subjectName)
+            .setDurable(randomDurableName())
+            .start();
+
+        final byte[] data = payload(256);
+        this.messages = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            this.messages.add(NatsMessage.builder()
+                .subject(subjectName)
+                .data(data)
+                .build());
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void receiveMessages() throws Exception {
+        this.publisher.publishAll(this.messages);
+
+        this.received = new ArrayList<>(MESSAGES);
+        while (this.received.size() < MESSAGES) {
+            final List<NatsReliableMessage> batch = this.subscriber.nextMessages(MESSAGES - this.received.size(), TIMEOUT);
+            if (batch != null) {
+                this.received.addAll(batch);
+            }
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void flush() throws Exception {
+        // fire-and-forget acks need to reach the server before the next invocation publishes more messages
+        this.connection.flush(TIMEOUT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.subscriber.stop();
+        this.connection.close();
+        this.nats.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void ack() throws Exception {
+        for (NatsReliableMessage message : this.received) {
+            message.ack();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void ackSync() throws Exception {
+        for (NatsReliableMessage message : this.received) {
+            message.ackSync(TIMEOUT);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void ackAsync() throws Exception {
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            futures[i] = this.received.get(i).ackAsync();
+        }
+        CompletableFuture.allOf(futures).get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.fizzed.nats.benchmarks;
+
+import com.fizzed.nats.core.NatsHelper;
+import com.fizzed.nats.core.NatsReliableMessage;
+import com.fizzed.nats.core.NatsReliableStreamPublisher;
+import com.fizzed.nats.core.NatsReliableStreamPullSubscriber;
+import io.nats.NatsServerRunner;
+import io.nats.client.Connection;
+import io.nats.client.Message;
+import io.nats.client.impl.NatsMessage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.fizzed.nats.benchmarks.NatsBenchmarkHelper.*;
+
+/**
+ * Benchmarks NatsReliableStreamPullSubscriber.nextMessage() and nextMessages(). Before each invocation a fixed number
+ * of messages are published, then the benchmark consumes (and acks) all of them, so the reported time is per message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FetchBenchmark {
+
+    static private final int MESSAGES = 1000;
+    static private final Duration POLL_TIME = Duration.ofSeconds(5);
+
+    @Param({ "1", "10", "100" })
+    public int batchSize;
+
+    @Param({ "0", "100" })
+    public int prefetchSize;
+
+    private NatsServerRunner nats;
+    private Connection connection;
+    private NatsReliableStreamPublisher publisher;
+    private NatsReliableStreamPullSubscriber subscriber;
+    private List<Message> messages;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.nats = startNatsServer();
+        this.connection = connectNats(this.nats);
+
+        final String subjectName = randomSubjectName();
+        NatsHelper.createWorkQueueStream(this.connection, randomStreamName(), subjectName);
+
+        this.publisher = new NatsReliableStreamPublisher(this.connection)
+            .start();
+
+        this.subscriber = new NatsReliableStreamPullSubscriber(this.connection)
+            .setSubject(subjectName)
+            .setDurable(randomDurableName())
+            .setPrefetchSize(this.prefetchSize)
+            .start();
+
+        final byte[] data = payload(256);
+        this.messages = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            this.messages.add(NatsMessage.builder()
+                .subject(subjectName)
+                .data(data)
+                .build());
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void publishMessages() throws Exception {
+        this.publisher.publishAll(this.messages);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.subscriber.stop();
+        this.connection.close();
+        this.nats.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void nextMessages(Blackhole blackhole) throws Exception {
+        int received = 0;
+        while (received < MESSAGES) {
+            if (this.batchSize == 1) {
+                final NatsReliableMessage message = this.subscriber.nextMessage(POLL_TIME);
+                if (message != null) {
+                    message.ack();
+                    blackhole.consume(message);
+                    received++;
+                }
+            } else {
+                final List<NatsReliableMessage> batch = this.subscriber.nextMessages(this.batchSize, POLL_TIME);
+                if (batch != null) {
+                    for (NatsReliableMessage message : batch) {
+                        message.ack();
+                        blackhole.consume(message);
+                    }
+                    received += batch.size();
+                }
+            }
+        }
+    }
+
+}
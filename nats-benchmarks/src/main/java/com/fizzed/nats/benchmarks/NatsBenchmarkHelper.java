@@ -0,0 +1,79 @@
+package com.fizzed.nats.benchmarks;
+
+import com.fizzed.jne.NativeTarget;
+import io.nats.NatsServerRunner;
+import io.nats.client.Connection;
+import io.nats.client.Nats;
+import io.nats.client.Options;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.UUID;
+
+public class NatsBenchmarkHelper {
+
+    /**
+     * Finds the nats-server executable, either from the "nats.exe" system property or by searching up from the
+     * working directory for the .resources directory that "blaze setup" downloads it into.
+     * @return the path to the nats-server executable
+     */
+    static public Path findNatsExe() {
+        final String natsExeProperty = System.getProperty("nats.exe");
+        if (natsExeProperty != null) {
+            return Paths.get(natsExeProperty);
+        }
+
+        final String exeName = NativeTarget.detect().resolveExecutableFileName("nats-server");
+
+        Path dir = Paths.get(".").toAbsolutePath().normalize();
+        while (dir != null) {
+            final Path maybeExe = dir.resolve(".resources").resolve(exeName);
+            if (Files.exists(maybeExe)) {
+                return maybeExe;
+            }
+            dir = dir.getParent();
+        }
+
+        throw new RuntimeException("Unable to locate .resources/" + exeName + " (did you run 'blaze setup' or set -Dnats.exe ??)");
+    }
+
+    static public NatsServerRunner startNatsServer() throws IOException {
+        return NatsServerRunner.builder()
+            .port(Integer.getInteger("nats.port", 24223))
+            .jetstream(true)
+            .executablePath(findNatsExe())
+            .processCheckTries(10)
+            .processCheckWait(500L)
+            .build();
+    }
+
+    static public Connection connectNats(NatsServerRunner nats) throws IOException, InterruptedException {
+        return Nats.connect(Options.builder()
+            .server(nats.getURI())
+            .connectionName("benchmark")
+            .build());
+    }
+
+    static public String randomStreamName() {
+        return "stream-" + UUID.randomUUID().toString().replace("-", "");
+    }
+
+    static public String randomSubjectName() {
+        return "subject." + UUID.randomUUID().toString().replace("-", "");
+    }
+
+    static public String randomDurableName() {
+        return "durable-" + UUID.randomUUID().toString().replace("-", "");
+    }
+
+    static public byte[] payload(int size) {
+        final byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte)('a' + (i % 26));
+        }
+        return data;
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.fizzed.nats.benchmarks;
+
+import com.fizzed.nats.core.NatsHelper;
+import com.fizzed.nats.core.NatsPublishResult;
+import com.fizzed.nats.core.NatsReliableStreamPublisher;
+import io.nats.NatsServerRunner;
+import io.nats.client.Connection;
+import io.nats.client.Message;
+import io.nats.client.api.PublishAck;
+import io.nats.client.impl.NatsMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.fizzed.nats.benchmarks.NatsBenchmarkHelper.*;
+
+/**
+ * Benchmarks NatsReliableStreamPublisher.publish() (one round trip per message) vs. publishAll() (pipelined).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PublishBenchmark {
+
+    static private final int BULK_SIZE = 1000;
+
+    @Param({ "128", "4096" })
+    public int payloadSize;
+
+    private NatsServerRunner nats;
+    private Connection connection;
+    private NatsReliableStreamPublisher publisher;
+    private Message message;
+    private List<Message> messages;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.nats = startNatsServer();
+        this.connection = connectNats(this.nats);
+
+        final String subjectName = randomSubjectName();
+        NatsHelper.createWorkQueueStream(this.connection, randomStreamName(), subjectName);
+
+        this.publisher = new NatsReliableStreamPublisher(this.connection)
+            .start();
+
+        this.message = NatsMessage.builder()
+            .subject(subjectName)
+            .data(payload(this.payloadSize))
+            .build();
+
+        this.messages = new ArrayList<>(BULK_SIZE);
+        for (int i = 0; i < BULK_SIZE; i++) {
+            this.messages.add(this.message);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.connection.close();
+        this.nats.close();
+    }
+
+    @Benchmark
+    public PublishAck publish() throws Exception {
+        return this.publisher.publish(this.message);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BULK_SIZE)
+    public List<NatsPublishResult> publishAll() throws Exception {
+        return this.publisher.publishAll(this.messages);
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.fizzed.nats.benchmarks;
+
+import com.fizzed.nats.core.NatsHelper;
+import com.fizzed.nats.core.NatsReliableMessage;
+import io.nats.client.Message;
+import io.nats.client.impl.NatsMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.fizzed.nats.benchmarks.NatsBenchmarkHelper.payload;
+
+/**
+ * Benchmarks NatsHelper.toReliableMessageList(), which wraps every fetched batch (no nats server is required).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ToReliableMessageListBenchmark {
+
+    @Param({ "1", "10", "100" })
+    public int batchSize;
+
+    private List<Message> messages;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final byte[] data = payload(256);
+        this.messages = new ArrayList<>(this.batchSize);
+        for (int i = 0; i < this.batchSize; i++) {
+            this.messages.add(NatsMessage.builder()
+                .subject("benchmark.subject")
+                .data(data)
+                .build());
+        }
+    }
+
+    @Benchmark
+    public List<NatsReliableMessage> toReliableMessageList() {
+        return NatsHelper.toReliableMessageList(this.messages);
+    }
+
+}
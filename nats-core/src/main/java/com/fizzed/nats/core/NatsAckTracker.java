@@ -0,0 +1,152 @@
+package com.fizzed.nats.core;
+
+import io.nats.client.Connection;
+import io.nats.client.Message;
+import io.nats.client.impl.AckType;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Pipelines acks that are confirmed by the nats server (e.g. the equivalent of an ackSync), without blocking the
+ * calling thread for a round trip. The number of acks awaiting confirmation is capped, and once the cap is reached
+ * callers will block until an earlier ack has been confirmed. A single tracker may be shared across subscribers.
+ *
+ * The ack is sent as a request on the connection, so the message itself does not know it was acked, and a later
+ * ack(), nak() or term() of it would still be sent. Use NatsReliableMessage.ackAsync(), which ignores those (the
+ * same as nats.java does once a message was acked).
+ */
+public class NatsAckTracker {
+
+    static private final byte[] ACK_BODY = "+ACK".getBytes(StandardCharsets.US_ASCII);
+
+    static private volatile NatsAckTracker defaultTracker;
+
+    private final int maxInFlight;
+    private final Duration timeout;
+    private final Semaphore permits;
+
+    public NatsAckTracker() {
+        this(1024, Duration.ofSeconds(5));
+    }
+
+    public NatsAckTracker(int maxInFlight, Duration timeout) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Max in flight must be >= 1");
+        }
+        this.maxInFlight = maxInFlight;
+        this.timeout = timeout;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Gets the tracker shared by any message that was not assigned a tracker by its subscriber.
+     * @return the default tracker
+     */
+    static public NatsAckTracker getDefault() {
+        NatsAckTracker tracker = defaultTracker;
+        if (tracker == null) {
+            synchronized (NatsAckTracker.class) {
+                // we need to make sure its still not yet set (double lock)
+                tracker = defaultTracker;
+                if (tracker == null) {
+                    tracker = new NatsAckTracker();
+                    defaultTracker = tracker;
+                }
+            }
+        }
+        return tracker;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Gets the number of acks currently awaiting confirmation from the nats server.
+     * @return the number of acks in flight
+     */
+    public int getInFlight() {
+        return this.maxInFlight - this.permits.availablePermits();
+    }
+
+    /**
+     * Sends an ack for the message, returning a future that completes once the nats server confirms it. The future
+     * fails with a TimeoutException if the server did not confirm in time, or a NatsUnrecoverableException if the
+     * ack could not be sent at all. Blocks only if the max number of acks are already in flight.
+     * @param message the message to ack
+     * @return a future that completes once the ack is confirmed
+     * @throws InterruptedException if interrupted while waiting for room in the pipeline
+     */
+    public CompletableFuture<Void> ack(Message message) throws InterruptedException {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        final Connection connection = message.getConnection();
+        final String replyTo = message.getReplyTo();
+        if (connection == null || replyTo == null) {
+            future.completeExceptionally(new NatsUnrecoverableException("Message cannot be acked (it is not from a jetstream subscription)", null));
+            return future;
+        }
+
+        // nats.java ignores an ack of a message that was already acked, nak'ed or term'ed (and so do we)
+        final AckType lastAck = message.lastAck();
+        if (lastAck != null && lastAck.terminal) {
+            future.complete(null);
+            return future;
+        }
+
+        this.permits.acquire();
+
+        final CompletableFuture<Message> reply;
+        try {
+            reply = connection.requestWithTimeout(replyTo, ACK_BODY, this.timeout);
+        } catch (RuntimeException e) {
+            // nats.java uses IllegalStateException to represent a lot of various problems, from the connection being
+            // closed, etc. and in general, we will classify any of these as "unrecoverable"
+            this.permits.release();
+            future.completeExceptionally(new NatsUnrecoverableException(e.getMessage(), e));
+            return future;
+        }
+
+        reply.whenComplete((response, t) -> {
+            this.permits.release();
+            if (t != null) {
+                future.completeExceptionally(toAckException(t));
+            } else if (response != null && response.isStatusMessage()) {
+                // e.g. no responders, the consumer is gone
+                future.completeExceptionally(new NatsUnrecoverableException("Ack failed with status " + response.getStatus().getCode() + ": " + response.getStatus().getMessage(), null));
+            } else {
+                future.complete(null);
+            }
+        });
+
+        return future;
+    }
+
+    static private Throwable toAckException(Throwable t) {
+        if ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        if (t instanceof TimeoutException) {
+            return t;
+        }
+        if (t instanceof CancellationException) {
+            // nats.java cancels requests that were not responded to in time
+            final TimeoutException e = new TimeoutException("Ack was not confirmed in time");
+            e.initCause(t);
+            return e;
+        }
+        return new NatsUnrecoverableException(t.getMessage(), t);
+    }
+
+}
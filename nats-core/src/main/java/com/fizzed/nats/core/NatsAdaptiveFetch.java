@@ -0,0 +1,152 @@
+package com.fizzed.nats.core;
+
+import java.time.Duration;
+
+/**
+ * Adaptively sizes the fetches of a pull subscriber, so that a worker is kept busy without claiming more messages than
+ * it can process before they would hit their ack wait and be redelivered. The batch size grows while fetches come back
+ * full, shrinks toward what is actually available when they come back partial, and is capped so that a batch can be
+ * processed within the target batch time (based on the measured processing time per message, e.g. the time between
+ * calls to nextMessages()). The pull request expiration grows while polls come back empty (fewer wasted round trips
+ * when idle) and resets as soon as messages flow again.
+ */
+public class NatsAdaptiveFetch {
+
+    // weight of the newest sample in the moving averages
+    static private final double ALPHA = 0.2d;
+
+    private int minBatchSize;
+    private int maxBatchSize;
+    private Duration targetBatchTime;
+    private Duration minExpiresIn;
+    private Duration maxExpiresIn;
+    // adaptive state
+    private int batchSize;
+    private long expiresInNanos;
+    private double fillRatio;
+    private double processingNanosPerMessage;
+
+    public NatsAdaptiveFetch() {
+        this.minBatchSize = 1;
+        this.maxBatchSize = 256;
+        this.targetBatchTime = Duration.ofSeconds(5);
+        this.minExpiresIn = Duration.ofMillis(500L);
+        this.maxExpiresIn = Duration.ofSeconds(30);
+        this.batchSize = 1;
+        this.expiresInNanos = this.minExpiresIn.toNanos();
+        this.fillRatio = 1.0d;
+    }
+
+    public int getMinBatchSize() {
+        return minBatchSize;
+    }
+
+    public NatsAdaptiveFetch setMinBatchSize(int minBatchSize) {
+        this.minBatchSize = minBatchSize;
+        return this;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public NatsAdaptiveFetch setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    public Duration getTargetBatchTime() {
+        return targetBatchTime;
+    }
+
+    /**
+     * Sets how long processing a batch should take at most, which should be comfortably less than the ack wait of the
+     * consumer (default is 5s, with the default ack wait being 30s).
+     * @param targetBatchTime the target time to process a batch
+     * @return this adaptive fetch
+     */
+    public NatsAdaptiveFetch setTargetBatchTime(Duration targetBatchTime) {
+        this.targetBatchTime = targetBatchTime;
+        return this;
+    }
+
+    public Duration getMinExpiresIn() {
+        return minExpiresIn;
+    }
+
+    public NatsAdaptiveFetch setMinExpiresIn(Duration minExpiresIn) {
+        this.minExpiresIn = minExpiresIn;
+        this.expiresInNanos = minExpiresIn.toNanos();
+        return this;
+    }
+
+    public Duration getMaxExpiresIn() {
+        return maxExpiresIn;
+    }
+
+    public NatsAdaptiveFetch setMaxExpiresIn(Duration maxExpiresIn) {
+        this.maxExpiresIn = maxExpiresIn;
+        return this;
+    }
+
+    synchronized public int getBatchSize() {
+        return Math.max(this.minBatchSize, Math.min(this.batchSize, this.getMaxBatchSizeByTime()));
+    }
+
+    synchronized public Duration getExpiresIn() {
+        return Duration.ofNanos(this.expiresInNanos);
+    }
+
+    synchronized public double getFillRatio() {
+        return fillRatio;
+    }
+
+    synchronized public Duration getProcessingTimePerMessage() {
+        return Duration.ofNanos((long)this.processingNanosPerMessage);
+    }
+
+    synchronized public void recordFetch(int requested, int received) {
+        if (requested <= 0) {
+            return;
+        }
+
+        this.fillRatio = ewma(this.fillRatio, (double)received / requested);
+
+        if (received <= 0) {
+            // idle, so poll less often (the batch size is left alone for when messages arrive again)
+            this.expiresInNanos = Math.min(this.maxExpiresIn.toNanos(), this.expiresInNanos * 2);
+            return;
+        }
+
+        this.expiresInNanos = this.minExpiresIn.toNanos();
+
+        if (received >= requested) {
+            // full, we could have taken more
+            this.batchSize = Math.min(this.maxBatchSize, Math.max(this.batchSize, requested) * 2);
+        } else {
+            // partial, shrink toward what was actually available
+            this.batchSize = Math.max(this.minBatchSize, (this.batchSize + received) / 2);
+        }
+    }
+
+    synchronized public void recordProcessing(int count, long nanos) {
+        if (count <= 0 || nanos < 0) {
+            return;
+        }
+        final double perMessage = (double)nanos / count;
+        this.processingNanosPerMessage = this.processingNanosPerMessage <= 0.0d ? perMessage : ewma(this.processingNanosPerMessage, perMessage);
+    }
+
+    private int getMaxBatchSizeByTime() {
+        if (this.processingNanosPerMessage <= 0.0d) {
+            return this.maxBatchSize;
+        }
+        final double max = this.targetBatchTime.toNanos() / this.processingNanosPerMessage;
+        return (int)Math.min(this.maxBatchSize, Math.max(1.0d, max));
+    }
+
+    static private double ewma(double average, double sample) {
+        return average + ALPHA * (sample - average);
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.fizzed.nats.core;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A bounded, jittered exponential backoff. The delay doubles with every attempt up to the max, and a random portion of
+ * it is subtracted so that many clients recovering from the same failure (e.g. a nats failover) don't retry in
+ * lockstep.
+ */
+public class NatsBackoff {
+
+    private final long initialMillis;
+    private final long maxMillis;
+    private final double jitter;
+
+    public NatsBackoff(Duration initial, Duration max) {
+        this(initial, max, 0.5d);
+    }
+
+    /**
+     * @param initial the delay of the first attempt
+     * @param max the max delay of any attempt
+     * @param jitter the max fraction of the delay that is randomly subtracted (0.0 for none, 1.0 for "full jitter")
+     */
+    public NatsBackoff(Duration initial, Duration max, double jitter) {
+        this.initialMillis = Math.max(1L, initial.toMillis());
+        this.maxMillis = Math.max(this.initialMillis, max.toMillis());
+        this.jitter = Math.min(1.0d, Math.max(0.0d, jitter));
+    }
+
+    public Duration getInitial() {
+        return Duration.ofMillis(this.initialMillis);
+    }
+
+    public Duration getMax() {
+        return Duration.ofMillis(this.maxMillis);
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * Gets the delay before an attempt.
+     * @param attempt the attempt, starting at 0
+     * @return the delay in millis
+     */
+    public long getDelayMillis(int attempt) {
+        // cap the shift so we never overflow
+        final long base = Math.min(this.maxMillis, this.initialMillis << Math.min(Math.max(0, attempt), 30));
+        final long jitterMillis = (long)(base * this.jitter * ThreadLocalRandom.current().nextDouble());
+        return Math.max(1L, base - jitterMillis);
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.fizzed.nats.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A base for compact binary codecs, where a value is written and read field by field. Encoding writes into a buffer
+ * that is reused per thread, so the only allocation per message is the final payload itself. Decoding reads directly
+ * from the payload bytes without copying them.
+ * @param <T> the type of value
+ */
+abstract public class NatsBinaryCodec<T> implements NatsCodec<T> {
+
+    // exposes reset() w/o discarding the underlying array, so the buffer can be reused
+    static private class ReusableOutputStream extends ByteArrayOutputStream {
+        private final DataOutputStream output = new DataOutputStream(this);
+
+        public ReusableOutputStream() {
+            super(256);
+        }
+
+        public int capacity() {
+            return this.buf.length;
+        }
+    }
+
+    // buffers that have grown larger than this are not kept, so one huge value doesn't pin memory forever
+    static private final int MAX_REUSED_BUFFER_SIZE = 1024 * 1024;
+
+    private final ThreadLocal<ReusableOutputStream> buffers = ThreadLocal.withInitial(ReusableOutputStream::new);
+
+    abstract protected void write(T value, DataOutput output) throws IOException;
+
+    abstract protected T read(DataInput input) throws IOException;
+
+    @Override
+    public byte[] encode(T value) throws IOException {
+        final ReusableOutputStream buffer = this.buffers.get();
+        buffer.reset();
+        try {
+            this.write(value, buffer.output);
+            buffer.output.flush();
+            return buffer.toByteArray();
+        } finally {
+            if (buffer.capacity() > MAX_REUSED_BUFFER_SIZE) {
+                this.buffers.remove();
+            }
+        }
+    }
+
+    @Override
+    public T decode(byte[] data) throws IOException {
+        return this.read(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+}
@@ -0,0 +1,286 @@
+package com.fizzed.nats.core;
+
+import io.nats.client.*;
+import io.nats.client.api.ObjectInfo;
+import io.nats.client.api.ObjectMeta;
+import io.nats.client.impl.Headers;
+import io.nats.client.impl.NatsMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.Supplier;
+
+/**
+ * Claim-check support for payloads too large to send as a single message (e.g. tens of megabytes). The payload is
+ * streamed into a JetStream object store bucket in chunks, and only a small reference message (headers only) is
+ * published to the stream. Consumers open the reference as an InputStream that is fed from the object store as its
+ * read (only ever about a chunk ahead), so neither side ever holds the whole payload in memory.
+ */
+public class NatsClaimCheck {
+    static private final Logger log = LoggerFactory.getLogger(NatsClaimCheck.class);
+
+    static public final String BUCKET_HEADER = "Nats-Plus-Object-Bucket";
+    static public final String NAME_HEADER = "Nats-Plus-Object-Name";
+    static public final String SIZE_HEADER = "Nats-Plus-Object-Size";
+
+    private final Supplier<Connection> connectionSupplier;
+    private final String bucket;
+    private int chunkSize;
+    private ObjectStore os;
+
+    public NatsClaimCheck(Connection connection, String bucket) {
+        this(() -> connection, bucket);
+    }
+
+    public NatsClaimCheck(Supplier<Connection> connectionSupplier, String bucket) {
+        this.connectionSupplier = connectionSupplier;
+        this.bucket = bucket;
+        this.chunkSize = 128 * 1024;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Sets the size of each chunk stored in the object store (default is 128KB). This is also the most that is held
+     * in memory at once by either side.
+     * @param chunkSize the chunk size in bytes
+     * @return this claim check
+     */
+    public NatsClaimCheck setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    synchronized public NatsClaimCheck start() throws NatsUnrecoverableException {
+        if (this.os != null) {
+            throw new NatsUnrecoverableException("Claim check already active", null);
+        }
+
+        final Connection connection = this.connectionSupplier.get();
+
+        try {
+            this.os = connection.objectStore(this.bucket);
+        } catch (IOException e) {
+            throw new NatsUnrecoverableException(e.getMessage(), e);
+        }
+
+        return this;
+    }
+
+    static public boolean isClaimCheck(Message message) {
+        final Headers headers = message.getHeaders();
+        return headers != null && headers.getFirst(NAME_HEADER) != null;
+    }
+
+    /**
+     * Streams the input into the object store and builds the reference message to publish in its place. The input
+     * is read one chunk at a time and is NOT closed. If this fails, the input has likely been partially consumed, so
+     * a retry will need a new input.
+     * @param subject the subject the reference message will be published to
+     * @param input the payload
+     * @return the reference message
+     */
+    public Message store(String subject, InputStream input) throws NatsRecoverableException, NatsUnrecoverableException {
+        final ObjectStore os = this.os;
+        if (os == null) {
+            throw new NatsUnrecoverableException("Claim check is not active (did you forget to call .start() ?)", null);
+        }
+
+        final String name = NUID.nextGlobal();
+
+        final ObjectInfo info;
+        try {
+            info = os.put(ObjectMeta.builder(name).chunkSize(this.chunkSize).build(), input);
+        } catch (JetStreamApiException | IOException e) {
+            throw new NatsRecoverableException(e.getMessage(), e);
+        } catch (NoSuchAlgorithmException | IllegalStateException e) {
+            // nats.java uses this to represent a lot of various problems, from the connection being closed, etc.
+            // in general, we will classify any of these as "unrecoverable" to help the client know to restart everything
+            throw new NatsUnrecoverableException(e.getMessage(), e);
+        }
+
+        log.trace("Stored claim check object {} in bucket {} ({} bytes in {} chunks)",
+            name, this.bucket, info.getSize(), info.getChunks());
+
+        final Headers headers = new Headers();
+        headers.put(BUCKET_HEADER, this.bucket);
+        headers.put(NAME_HEADER, name);
+        headers.put(SIZE_HEADER, Long.toString(info.getSize()));
+
+        return NatsMessage.builder()
+            .subject(subject)
+            .headers(headers)
+            .build();
+    }
+
+    /**
+     * Opens the object referenced by the message as a stream. The object is read by nats.java on a background thread,
+     * which only stays about a chunk ahead of the stream, and its size and digest are verified once the stream hits the
+     * end (a mismatch, or any other failure fetching the object, is thrown as an IOException from read). Close the
+     * stream to stop fetching early.
+     * @param message the reference message
+     * @return the payload
+     * @throws FileNotFoundException if the object does not exist (e.g. it was already deleted)
+     */
+    public InputStream open(Message message) throws IOException, NatsUnrecoverableException {
+        final ObjectStore os = this.os;
+        if (os == null) {
+            throw new NatsUnrecoverableException("Claim check is not active (did you forget to call .start() ?)", null);
+        }
+
+        final String name = this.getObjectName(message);
+
+        final ObjectInfo info;
+        try {
+            info = os.getInfo(name);
+        } catch (JetStreamApiException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+
+        if (info == null || info.isDeleted()) {
+            throw new FileNotFoundException("Object " + name + " not found in bucket " + this.bucket);
+        }
+
+        return new ObjectInputStream(os, info, this.chunkSize);
+    }
+
+    /**
+     * Deletes the object referenced by the message, e.g. once the message has been processed.
+     * @param message the reference message
+     */
+    public void delete(Message message) throws NatsRecoverableException, NatsUnrecoverableException {
+        final ObjectStore os = this.os;
+        if (os == null) {
+            throw new NatsUnrecoverableException("Claim check is not active (did you forget to call .start() ?)", null);
+        }
+
+        try {
+            os.delete(this.getObjectName(message));
+        } catch (JetStreamApiException | IOException e) {
+            throw new NatsRecoverableException(e.getMessage(), e);
+        } catch (IllegalStateException e) {
+            // nats.java uses this to represent a lot of various problems, from the connection being closed, etc.
+            // in general, we will classify any of these as "unrecoverable" to help the client know to restart everything
+            throw new NatsUnrecoverableException(e.getMessage(), e);
+        }
+    }
+
+    private String getObjectName(Message message) throws NatsUnrecoverableException {
+        final Headers headers = message.getHeaders();
+        final String bucket = headers != null ? headers.getFirst(BUCKET_HEADER) : null;
+        final String name = headers != null ? headers.getFirst(NAME_HEADER) : null;
+        if (name == null) {
+            throw new NatsUnrecoverableException("Message is not a claim check (no " + NAME_HEADER + " header)", null);
+        }
+        if (bucket != null && !bucket.equals(this.bucket)) {
+            throw new NatsUnrecoverableException("Claim check is for bucket " + bucket + " (not " + this.bucket + ")", null);
+        }
+        return name;
+    }
+
+    // implemented here so its not in the public API
+    static private class ObjectInputStream extends InputStream {
+
+        private final ObjectInfo info;
+        private final PipedInputStream pipe;
+        private final Thread writerThread;
+        // set by the writer thread before it closes its end of the pipe, so its visible once we hit eof
+        private volatile Throwable failure;
+        private long bytesRead;
+        private boolean eof;
+
+        public ObjectInputStream(ObjectStore os, ObjectInfo info, int bufferSize) throws IOException {
+            this.info = info;
+            this.pipe = new PipedInputStream(Math.max(1024, bufferSize));
+            final PipedOutputStream output = new PipedOutputStream(this.pipe);
+            // nats.java only streams an object into an OutputStream, so its written into the pipe on its own thread,
+            // which blocks whenever the pipe is full (i.e. only about a chunk is ever held in memory)
+            this.writerThread = NatsThreads.newThread("nats-claim-check-" + info.getObjectName(), true, () -> {
+                try {
+                    // NOTE: nats.java verifies the digest once the last chunk is written
+                    os.get(info.getObjectName(), output);
+                } catch (InterruptedException e) {
+                    this.failure = e;
+                    Thread.currentThread().interrupt();
+                } catch (Throwable t) {
+                    this.failure = t;
+                } finally {
+                    try {
+                        output.close();
+                    } catch (IOException e) {
+                        // nothing more we can do, the reader will see the failure (if any) or eof
+                    }
+                }
+            });
+            this.writerThread.start();
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = this.pipe.read();
+            if (b < 0) {
+                this.verify();
+            } else {
+                this.bytesRead++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            final int n = this.pipe.read(b, off, len);
+            if (n < 0) {
+                this.verify();
+            } else {
+                this.bytesRead += n;
+            }
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return this.pipe.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the writer thread fails its next write once the pipe is closed, so it won't keep fetching chunks
+            this.pipe.close();
+        }
+
+        private void verify() throws IOException {
+            if (this.eof) {
+                return;
+            }
+
+            final Throwable t = this.failure;
+            if (t != null) {
+                throw new IOException("Unable to get object " + this.info.getObjectName() + ": " + t.getMessage(), t);
+            }
+
+            if (this.bytesRead != this.info.getSize()) {
+                throw new IOException("Object " + this.info.getObjectName() + " was " + this.bytesRead
+                    + " bytes (expected " + this.info.getSize() + ")");
+            }
+
+            this.eof = true;
+        }
+
+    }
+
+}
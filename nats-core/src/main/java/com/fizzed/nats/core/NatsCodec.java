@@ -0,0 +1,16 @@
+package com.fizzed.nats.core;
+
+import java.io.IOException;
+
+/**
+ * Encodes values into message payloads when publishing and decodes them back when consuming. Implementations must be
+ * thread safe, since a single codec is shared by a publisher or subscriber across all of its messages.
+ * @param <T> the type of value
+ */
+public interface NatsCodec<T> {
+
+    byte[] encode(T value) throws IOException;
+
+    T decode(byte[] data) throws IOException;
+
+}
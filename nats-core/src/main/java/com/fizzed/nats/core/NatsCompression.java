@@ -0,0 +1,114 @@
+package com.fizzed.nats.core;
+
+import io.nats.client.Message;
+import io.nats.client.impl.Headers;
+import io.nats.client.impl.NatsMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Payload compression for the reliable publisher and message. Compressed payloads are marked with a header, so
+ * consumers can transparently decompress them (and uncompressed payloads from older publishers still work).
+ */
+public class NatsCompression {
+
+    static public final String HEADER = "Nats-Plus-Encoding";
+    static public final String DEFLATE = "deflate";
+    // the largest max payload a nats server can be configured with, a payload can't legitimately inflate much beyond
+    static public final int DEFAULT_MAX_INFLATED_SIZE = 64 * 1024 * 1024;
+
+    // deflaters/inflaters hold native memory and are expensive to create, so we reuse them per thread
+    static private final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    static private final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+
+    static public boolean isCompressed(Message message) {
+        final Headers headers = message.getHeaders();
+        return headers != null && DEFLATE.equals(headers.getFirst(HEADER));
+    }
+
+    /**
+     * Compresses the payload of the message if its larger than the threshold, and only if compression actually makes
+     * it smaller.
+     * @param message the message to compress
+     * @param threshold the min payload size in bytes to attempt to compress
+     * @return a new compressed message or the original message if compression was not worth it
+     */
+    static public Message compress(Message message, int threshold) {
+        final byte[] data = message.getData();
+        if (data == null || data.length < threshold || isCompressed(message)) {
+            return message;
+        }
+
+        final byte[] compressed = deflate(data);
+        if (compressed.length >= data.length) {
+            // incompressible (e.g. already compressed or encrypted), not worth the cost to decompress it later
+            return message;
+        }
+
+        final Headers headers = message.getHeaders() != null ? new Headers(message.getHeaders()) : new Headers();
+        headers.put(HEADER, DEFLATE);
+
+        return NatsMessage.builder()
+            .subject(message.getSubject())
+            .replyTo(message.getReplyTo())
+            .headers(headers)
+            .data(compressed)
+            .build();
+    }
+
+    static public byte[] deflate(byte[] data) {
+        final Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+        final byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            final int len = deflater.deflate(buffer);
+            output.write(buffer, 0, len);
+        }
+        return output.toByteArray();
+    }
+
+    static public byte[] inflate(byte[] data) throws IOException {
+        return inflate(data, DEFAULT_MAX_INFLATED_SIZE);
+    }
+
+    /**
+     * Decompresses the payload, failing as soon as it inflates beyond the max size (e.g. a tiny payload crafted to
+     * inflate to gigabytes, which would otherwise run us out of memory).
+     * @param data the compressed payload
+     * @param maxSize the max size of the decompressed payload in bytes
+     * @return the decompressed payload
+     * @throws IOException if the payload is corrupt or inflates beyond the max size
+     */
+    static public byte[] inflate(byte[] data, int maxSize) throws IOException {
+        final Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(data);
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream((int)Math.min(maxSize, data.length * 4L));
+        final byte[] buffer = new byte[8192];
+        try {
+            while (!inflater.finished()) {
+                final int len = inflater.inflate(buffer);
+                if (len == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Compressed payload is truncated or corrupt");
+                }
+                if (output.size() + len > maxSize) {
+                    throw new IOException("Compressed payload inflates to more than the max of " + maxSize + " bytes");
+                }
+                output.write(buffer, 0, len);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Compressed payload is corrupt: " + e.getMessage(), e);
+        }
+        return output.toByteArray();
+    }
+
+}
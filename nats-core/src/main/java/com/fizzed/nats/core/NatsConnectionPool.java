@@ -0,0 +1,161 @@
+package com.fizzed.nats.core;
+
+import io.nats.client.Connection;
+import io.nats.client.ConnectionListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A provider that stripes publishers and subscribers across a pool of connections, rather than funneling all traffic
+ * through a single socket (and its single reader and writer thread). Every call to get() assigns the next connection
+ * round-robin (skipping any that are currently unhealthy), while forKey() always assigns the same connection for the
+ * same key. Connections are lazily created and each is health-tracked independently.
+ */
+public class NatsConnectionPool implements NatsConnectionSource {
+    static private final Logger log = LoggerFactory.getLogger(NatsConnectionPool.class);
+
+    // implemented here so its not in the public API
+    static private class Slot implements ConnectionListener {
+        private final int index;
+        private volatile Connection connection;
+        private volatile boolean healthy;
+
+        public Slot(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void connectionEvent(Connection conn, Events type) {
+            if (type != null) {
+                switch (type) {
+                    case CLOSED:
+                    case DISCONNECTED:
+                    case LAME_DUCK:
+                        log.warn("Connection {} in pool to nats {}", this.index, type.name());
+                        this.healthy = false;
+                        break;
+                    case CONNECTED:
+                    case RECONNECTED:
+                        log.debug("Connection {} in pool to nats {}", this.index, type.name());
+                        this.healthy = true;
+                        break;
+                }
+            }
+        }
+    }
+
+    private final Supplier<Connection> supplier;
+    private final Slot[] slots;
+    private final AtomicInteger nextIndex;
+
+    public NatsConnectionPool(Supplier<Connection> supplier, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be >= 1");
+        }
+        this.supplier = supplier;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            this.slots[i] = new Slot(i);
+        }
+        this.nextIndex = new AtomicInteger();
+    }
+
+    public int getSize() {
+        return this.slots.length;
+    }
+
+    public boolean isHealthy(int index) {
+        final Slot slot = this.slots[index];
+        return slot.connection != null && slot.healthy;
+    }
+
+    public int getHealthyCount() {
+        int count = 0;
+        for (int i = 0; i < this.slots.length; i++) {
+            if (this.isHealthy(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the next connection in the pool round-robin. Connections that are known to be unhealthy are skipped, unless
+     * every connection is unhealthy (in which case the caller's own health checks will deal with it).
+     * @return the next connection
+     */
+    @Override
+    public Connection get() {
+        final int start = Math.floorMod(this.nextIndex.getAndIncrement(), this.slots.length);
+        for (int i = 0; i < this.slots.length; i++) {
+            final Slot slot = this.slots[(start + i) % this.slots.length];
+            // a connection not yet created is assumed healthy
+            if (slot.connection == null || slot.healthy) {
+                return this.connect(slot);
+            }
+        }
+        return this.connect(this.slots[start]);
+    }
+
+    /**
+     * Gets the connection at an index in the pool.
+     * @param index the index of the connection
+     * @return the connection
+     */
+    public Connection get(int index) {
+        return this.connect(this.slots[index]);
+    }
+
+    /**
+     * Gets a supplier that always returns the same connection for the key (e.g. so everything for a subject or
+     * tenant shares a connection), regardless of its health.
+     * @param key the key to hash
+     * @return a supplier for the connection assigned to the key
+     */
+    public Supplier<Connection> forKey(String key) {
+        final int index = Math.floorMod(key != null ? key.hashCode() : 0, this.slots.length);
+        return () -> this.get(index);
+    }
+
+    private Connection connect(Slot slot) {
+        Connection connection = slot.connection;
+        if (connection == null) {
+            synchronized (slot) {
+                // we need to make sure its still not yet set (double lock)
+                connection = slot.connection;
+                if (connection == null) {
+                    connection = this.supplier.get();
+                    connection.addConnectionListener(slot);
+                    // we may have missed events before the listener was added
+                    slot.healthy = connection.getStatus() == Connection.Status.CONNECTED;
+                    slot.connection = connection;
+                }
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Closes every connection in the pool that was created.
+     * @throws InterruptedException if interrupted while closing
+     */
+    @Override
+    public void close() throws InterruptedException {
+        for (Slot slot : this.slots) {
+            final Connection connection;
+            synchronized (slot) {
+                connection = slot.connection;
+                slot.connection = null;
+                slot.healthy = false;
+            }
+            if (connection != null) {
+                connection.removeConnectionListener(slot);
+                connection.close();
+            }
+        }
+    }
+
+}
@@ -5,7 +5,7 @@ import io.nats.client.Connection;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
-public class NatsConnectionProvider implements Supplier<Connection> {
+public class NatsConnectionProvider implements NatsConnectionSource {
 
     private final Supplier<Connection> supplier;
     private final AtomicReference<Connection> connectionRef;
@@ -15,6 +15,7 @@ public class NatsConnectionProvider implements Supplier<Connection> {
         this.connectionRef = new AtomicReference<>();
     }
 
+    @Override
     public Connection get() {
         Connection connection = this.connectionRef.get();
         if (connection == null) {
@@ -30,4 +31,16 @@ public class NatsConnectionProvider implements Supplier<Connection> {
         return connection;
     }
 
+    /**
+     * Closes the connection (if one was ever created).
+     * @throws InterruptedException if interrupted while closing
+     */
+    @Override
+    public void close() throws InterruptedException {
+        final Connection connection = this.connectionRef.getAndSet(null);
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.fizzed.nats.core;
+
+import io.nats.client.Connection;
+
+import java.util.function.Supplier;
+
+/**
+ * Supplies the connections used by publishers and subscribers, and owns them, so they can all be closed at once. A
+ * NatsConnectionProvider always supplies the same connection, while a NatsConnectionPool stripes across many.
+ */
+public interface NatsConnectionSource extends Supplier<Connection> {
+
+    /**
+     * Gets a connection, creating it if needed.
+     * @return the connection
+     */
+    @Override
+    Connection get();
+
+    /**
+     * Closes every connection that was created.
+     * @throws InterruptedException if interrupted while closing
+     */
+    void close() throws InterruptedException;
+
+}
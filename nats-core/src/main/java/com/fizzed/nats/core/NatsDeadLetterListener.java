@@ -0,0 +1,20 @@
+package com.fizzed.nats.core;
+
+import io.nats.client.Message;
+
+/**
+ * Listens for messages a NatsOutbox gave up on, since they were rejected in a way that retrying will never fix (e.g.
+ * the payload is larger than the max payload of the nats server). Called on the forwarding thread, so it should
+ * return quickly.
+ */
+@FunctionalInterface
+public interface NatsDeadLetterListener {
+
+    /**
+     * Called once for each message that was rejected. The outbox moves on to the next message after this returns.
+     * @param message the rejected message
+     * @param exception why it was rejected
+     */
+    void deadLetter(Message message, Exception exception);
+
+}
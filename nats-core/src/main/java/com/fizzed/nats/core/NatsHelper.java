@@ -9,6 +9,7 @@ import io.nats.client.impl.Headers;
 import io.nats.client.impl.NatsJetStreamMetaData;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -17,16 +18,20 @@ import java.util.List;
 public class NatsHelper {
 
     static public List<NatsReliableMessage> toReliableMessageList(List<Message> messages) {
+        return toReliableMessageList(messages, null);
+    }
+
+    static public List<NatsReliableMessage> toReliableMessageList(List<Message> messages, NatsReliableStreamPullSubscriber subscriber) {
         // if just a single message, we'll optimize for that
         if (messages == null) {
             return null;
         }
         if (messages.size() == 1) {
-            return Collections.singletonList(new NatsReliableMessage(messages.get(0)));
+            return Collections.singletonList(new NatsReliableMessage(messages.get(0), subscriber));
         }
         List<NatsReliableMessage> newMessages = new ArrayList<>(messages.size());
         for (Message m : messages) {
-            newMessages.add(new NatsReliableMessage(m));
+            newMessages.add(new NatsReliableMessage(m, subscriber));
         }
         return newMessages;
     }
@@ -36,25 +41,44 @@ public class NatsHelper {
     }
 
     static public String dumpMessage(NatsReliableMessage message) {
+        return dumpMessage(message, 255);
+    }
+
+    static public String dumpMessage(NatsReliableMessage message, int maxDataLength) {
         if (message == null) {
             return null;
         }
-        return dumpMessage(message.unwrap(), 255);
+        // the data of a reliable message is decompressed (if it needed to be)
+        byte[] data;
+        try {
+            data = message.getData();
+        } catch (UncheckedIOException e) {
+            // a corrupt payload is exactly the kind of thing we'd want to be able to dump
+            data = message.unwrap().getData();
+        }
+        return dumpMessage(message.unwrap(), data, maxDataLength);
     }
 
     static public String dumpMessage(Message message, int maxDataLength) {
         if (message == null) {
             return null;
         }
+        return dumpMessage(message, message.getData(), maxDataLength);
+    }
+
+    static private String dumpMessage(Message message, byte[] data, int maxDataLength) {
 
         final StringBuilder sb = new StringBuilder();
 
         sb.append("subject: ").append(message.getSubject()).append("\n");
 
-        final NatsJetStreamMetaData md = message.metaData();
-        if (md != null) {
-            final long seqNo = md.streamSequence();
-            sb.append("seqNo: ").append(seqNo).append("\n");
+        // nats.java throws an IllegalStateException asking a core (non jetstream) message for its metadata
+        if (message.isJetStream()) {
+            final NatsJetStreamMetaData md = message.metaData();
+            if (md != null) {
+                final long seqNo = md.streamSequence();
+                sb.append("seqNo: ").append(seqNo).append("\n");
+            }
         }
 
         final Headers headers = message.getHeaders();
@@ -67,13 +91,14 @@ public class NatsHelper {
             });
         }
 
-        final byte[] data = message.getData();
         sb.append("data: bytes=").append(data != null ? data.length : 0).append("\n");
         if (data != null && data.length > 0) {
             // cap logging to X bytes
             if (data.length > maxDataLength) {
-                sb.append(" ").append(new String(data, 0, maxDataLength, StandardCharsets.UTF_8)).append("\n");
-                sb.append(" <truncated ").append(data.length - maxDataLength).append(" bytes>\n");
+                // never split a multi-byte character, which would render as garbage
+                final int length = utf8Boundary(data, maxDataLength);
+                sb.append(" ").append(new String(data, 0, length, StandardCharsets.UTF_8)).append("\n");
+                sb.append(" <truncated ").append(data.length - length).append(" bytes>\n");
             } else {
                 sb.append(" ").append(new String(data, StandardCharsets.UTF_8)).append("\n");
             }
@@ -82,6 +107,21 @@ public class NatsHelper {
         return sb.toString();
     }
 
+    /**
+     * Finds the largest length <= maxLength that does not split a multi-byte UTF-8 character.
+     */
+    static int utf8Boundary(byte[] data, int maxLength) {
+        if (maxLength >= data.length) {
+            return data.length;
+        }
+        int length = Math.max(0, maxLength);
+        // continuation bytes are 10xxxxxx, so back up until the next byte starts a new character
+        while (length > 0 && (data[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        return length;
+    }
+
     static public void deleteAllStreams(Connection connection) throws IOException, JetStreamApiException {
         JetStreamManagement jsm = connection.jetStreamManagement();
         final List<String> streamNames = jsm.getStreamNames();
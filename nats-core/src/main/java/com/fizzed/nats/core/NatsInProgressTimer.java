@@ -0,0 +1,299 @@
+package com.fizzed.nats.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends in progress heartbeats for messages that are still being processed, so long running handlers don't exceed
+ * the ack wait of their consumer and trigger a redelivery (while the original is still being worked on). Every
+ * tracked message across every subscriber is served by a single thread driving a hashed timer wheel, so tracking a
+ * message is just a queue insert, and stopping tracking it is just a flag (no thread or scheduled task per message).
+ * Heartbeats are accurate to within a tick, which is fine since they are sent well before the ack wait expires.
+ */
+public class NatsInProgressTimer {
+    static private final Logger log = LoggerFactory.getLogger(NatsInProgressTimer.class);
+
+    static private volatile NatsInProgressTimer defaultTimer;
+
+    // implemented here so its not in the public API
+    static final class Heartbeat {
+        private final NatsInProgressTimer timer;
+        private final NatsReliableMessage message;
+        private final long intervalNanos;
+        private final long stopAtNanos;
+        private final AtomicBoolean cancelled;
+        // only ever accessed by the wheel thread
+        private long deadlineNanos;
+        private long remainingRounds;
+        private Heartbeat next;
+
+        private Heartbeat(NatsInProgressTimer timer, NatsReliableMessage message, long intervalNanos, long stopAtNanos) {
+            this.timer = timer;
+            this.message = message;
+            this.intervalNanos = intervalNanos;
+            this.stopAtNanos = stopAtNanos;
+            this.cancelled = new AtomicBoolean();
+            this.deadlineNanos = System.nanoTime() + intervalNanos;
+        }
+
+        void cancel() {
+            this.timer.untrack(this);
+        }
+    }
+
+    private final long tickNanos;
+    private final Heartbeat[] wheel;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Heartbeat> added;
+    private final AtomicInteger tracked;
+    private final LongAdder sent;
+    private Duration maxDuration;
+    private volatile boolean running;
+    private Thread thread;
+    // only ever accessed by the wheel thread
+    private long startNanos;
+    private long tick;
+
+    public NatsInProgressTimer() {
+        this(Duration.ofMillis(100L), 512);
+    }
+
+    /**
+     * @param tickDuration the resolution of the timer
+     * @param wheelSize the number of buckets in the wheel (rounded up to a power of 2), with the default tick of 100ms
+     *                  and 512 buckets, any interval under ~51 secs is scheduled without wrapping around the wheel
+     */
+    public NatsInProgressTimer(Duration tickDuration, int wheelSize) {
+        this.tickNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1L), tickDuration.toNanos());
+        final int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.wheel = new Heartbeat[size];
+        this.mask = size - 1;
+        this.added = new ConcurrentLinkedQueue<>();
+        this.tracked = new AtomicInteger();
+        this.sent = new LongAdder();
+        this.maxDuration = Duration.ofMinutes(30L);
+    }
+
+    /**
+     * Gets the timer shared by all subscribers that were not assigned their own.
+     * @return the default timer
+     */
+    static public NatsInProgressTimer getDefault() {
+        NatsInProgressTimer timer = defaultTimer;
+        if (timer == null) {
+            synchronized (NatsInProgressTimer.class) {
+                // we need to make sure its still not yet set (double lock)
+                timer = defaultTimer;
+                if (timer == null) {
+                    timer = new NatsInProgressTimer();
+                    defaultTimer = timer;
+                }
+            }
+        }
+        return timer;
+    }
+
+    public Duration getTickDuration() {
+        return Duration.ofNanos(this.tickNanos);
+    }
+
+    public Duration getMaxDuration() {
+        return maxDuration;
+    }
+
+    /**
+     * Sets the max amount of time a message is kept in progress, after which heartbeats stop and the message will be
+     * redelivered once its ack wait expires. This is what bounds a message that is never acked, nak'ed or term'ed
+     * (e.g. a handler that threw or is stuck), which would otherwise be kept in progress (and referenced by this timer)
+     * for the life of the process. The default is 30 minutes, set it to the longest your handlers legitimately take.
+     * @param maxDuration the max amount of time or null for no limit (only if every message is always completed)
+     * @return this timer
+     */
+    public NatsInProgressTimer setMaxDuration(Duration maxDuration) {
+        this.maxDuration = maxDuration;
+        return this;
+    }
+
+    /**
+     * Gets the number of messages currently being tracked.
+     * @return the number of messages tracked
+     */
+    public int getTrackedCount() {
+        return this.tracked.get();
+    }
+
+    /**
+     * Gets the number of in progress heartbeats sent.
+     * @return the number of heartbeats sent
+     */
+    public long getSentCount() {
+        return this.sent.sum();
+    }
+
+    /**
+     * Starts sending in progress heartbeats for the message, every interval, until it is acked, nak'ed or term'ed.
+     * @param message the message
+     * @param interval how often to send a heartbeat (e.g. half of the ack wait of the consumer)
+     * @return the heartbeat, which can be cancelled
+     */
+    Heartbeat track(NatsReliableMessage message, Duration interval) {
+        final Duration max = this.maxDuration;
+        final long stopAtNanos = max != null ? System.nanoTime() + max.toNanos() : 0L;
+        final Heartbeat heartbeat = new Heartbeat(this, message, Math.max(this.tickNanos, interval.toNanos()), stopAtNanos);
+
+        this.tracked.incrementAndGet();
+        this.added.add(heartbeat);
+
+        if (!this.running) {
+            this.start();
+        }
+
+        return heartbeat;
+    }
+
+    /**
+     * Stops sending heartbeats. The heartbeat is removed from the wheel lazily, the next time its bucket is visited.
+     * @param heartbeat the heartbeat
+     */
+    void untrack(Heartbeat heartbeat) {
+        if (heartbeat.cancelled.compareAndSet(false, true)) {
+            this.tracked.decrementAndGet();
+        }
+    }
+
+    synchronized private void start() {
+        if (this.running) {
+            return;
+        }
+        this.running = true;
+        this.thread = NatsThreads.newThread("nats-in-progress-timer", false, this::run);
+        this.thread.start();
+    }
+
+    /**
+     * Stops the timer, and with it all heartbeats of all tracked messages. The timer is started again (w/ nothing
+     * tracked) the next time a message is tracked.
+     */
+    synchronized public void stop() {
+        if (this.thread != null) {
+            this.running = false;
+            LockSupport.unpark(this.thread);
+            try {
+                this.thread.join(5000L);
+            } catch (InterruptedException e) {
+                // restore the interrupt, we still want to finish stopping
+                Thread.currentThread().interrupt();
+            }
+            if (this.thread.isAlive()) {
+                log.warn("Nats in progress timer thread did not exit in time (will continue stopping anyway)");
+            }
+            this.thread = null;
+
+            // the wheel is relative to when the thread started, so nothing in it is valid anymore
+            for (int i = 0; i < this.wheel.length; i++) {
+                for (Heartbeat heartbeat = this.wheel[i]; heartbeat != null; heartbeat = heartbeat.next) {
+                    this.untrack(heartbeat);
+                }
+                this.wheel[i] = null;
+            }
+            Heartbeat heartbeat;
+            while ((heartbeat = this.added.poll()) != null) {
+                this.untrack(heartbeat);
+            }
+        }
+    }
+
+    private void run() {
+        log.debug("Nats in progress timer started");
+
+        this.startNanos = System.nanoTime();
+        this.tick = 0L;
+
+        while (this.running) {
+            final long tickDeadline = this.startNanos + (this.tick + 1) * this.tickNanos;
+            long sleepNanos;
+            while ((sleepNanos = tickDeadline - System.nanoTime()) > 0 && this.running) {
+                LockSupport.parkNanos(sleepNanos);
+            }
+
+            this.expire(this.wheel[(int)(this.tick & this.mask)], (int)(this.tick & this.mask));
+
+            Heartbeat heartbeat;
+            while ((heartbeat = this.added.poll()) != null) {
+                if (!heartbeat.cancelled.get()) {
+                    this.schedule(heartbeat);
+                }
+            }
+
+            this.tick++;
+        }
+
+        log.debug("Nats in progress timer exiting");
+    }
+
+    private void schedule(Heartbeat heartbeat) {
+        // the bucket of the current tick was already processed, so the soonest we can fire is the next tick
+        final long deadlineTick = Math.max(this.tick + 1, (heartbeat.deadlineNanos - this.startNanos) / this.tickNanos);
+        final int bucket = (int)(deadlineTick & this.mask);
+        heartbeat.remainingRounds = (deadlineTick - this.tick - 1) / this.wheel.length;
+        heartbeat.next = this.wheel[bucket];
+        this.wheel[bucket] = heartbeat;
+    }
+
+    private void expire(Heartbeat head, int bucket) {
+        this.wheel[bucket] = null;
+
+        Heartbeat heartbeat = head;
+        while (heartbeat != null) {
+            final Heartbeat next = heartbeat.next;
+            heartbeat.next = null;
+
+            if (heartbeat.cancelled.get()) {
+                // dropped from the wheel
+            } else if (heartbeat.remainingRounds > 0) {
+                heartbeat.remainingRounds--;
+                heartbeat.next = this.wheel[bucket];
+                this.wheel[bucket] = heartbeat;
+            } else {
+                this.fire(heartbeat);
+            }
+
+            heartbeat = next;
+        }
+    }
+
+    private void fire(Heartbeat heartbeat) {
+        final long now = System.nanoTime();
+
+        if (heartbeat.stopAtNanos != 0L && now - heartbeat.stopAtNanos >= 0) {
+            log.warn("Nats message on subject {} in progress longer than {} (will stop sending in progress heartbeats)",
+                heartbeat.message.getSubject(), this.maxDuration);
+            this.untrack(heartbeat);
+            return;
+        }
+
+        try {
+            // NOTE: this only queues up a publish on the connection, it never waits on the nats server
+            heartbeat.message.unwrap().inProgress();
+            this.sent.increment();
+        } catch (RuntimeException e) {
+            // nats.java uses IllegalStateException to represent a lot of various problems, from the connection being
+            // closed, etc. and in general, there's nothing more we can do for this message
+            log.debug("Nats in progress heartbeat failed (will stop sending them for this message)", e);
+            this.untrack(heartbeat);
+            return;
+        }
+
+        heartbeat.deadlineNanos = now + heartbeat.intervalNanos;
+        this.schedule(heartbeat);
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.fizzed.nats.core;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+
+/**
+ * A codec for JSON payloads using Jackson. Values are decoded directly from the payload bytes (without an
+ * intermediate String). Requires jackson-databind on the classpath (it is an optional dependency of this library).
+ * @param <T> the type of value
+ */
+public class NatsJacksonCodec<T> implements NatsCodec<T> {
+
+    private final ObjectMapper objectMapper;
+    private final JavaType type;
+
+    public NatsJacksonCodec(ObjectMapper objectMapper, Class<T> type) {
+        this.objectMapper = objectMapper;
+        this.type = objectMapper.constructType(type);
+    }
+
+    public NatsJacksonCodec(ObjectMapper objectMapper, TypeReference<T> type) {
+        this.objectMapper = objectMapper;
+        this.type = objectMapper.getTypeFactory().constructType(type);
+    }
+
+    static public <T> NatsJacksonCodec<T> of(Class<T> type) {
+        return new NatsJacksonCodec<>(new ObjectMapper(), type);
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    @Override
+    public byte[] encode(T value) throws IOException {
+        return this.objectMapper.writeValueAsBytes(value);
+    }
+
+    @Override
+    public T decode(byte[] data) throws IOException {
+        return this.objectMapper.readValue(data, this.type);
+    }
+
+}
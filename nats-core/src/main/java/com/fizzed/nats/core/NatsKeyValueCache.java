@@ -0,0 +1,336 @@
+package com.fizzed.nats.core;
+
+import io.nats.client.*;
+import io.nats.client.api.KeyValueEntry;
+import io.nats.client.api.KeyValueOperation;
+import io.nats.client.api.KeyValueWatchOption;
+import io.nats.client.api.KeyValueWatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A local read-through cache over a JetStream key-value bucket, so repeated reads of the same keys (e.g. configuration
+ * or feature lookups on a request path) are served from memory rather than a round trip to the nats server. Entries
+ * are loaded on first read, evicted approximately least recently used once the cache is full, and kept up to date by a
+ * watcher on the bucket (only keys that are cached or being loaded are tracked, so churn in other keys doesn't evict
+ * the hot ones). Missing keys are cached too. Revisions are compared so that a slow read can never overwrite a newer
+ * update from the watcher. The cache is cleared whenever the connection is lost, since updates may have been missed.
+ *
+ * Reads of cached keys never take a lock. Rather than a strict LRU (which must reorder on every read), a read only
+ * marks its entry as referenced, and eviction gives referenced entries a second chance (the "clock" algorithm).
+ */
+public class NatsKeyValueCache {
+    static private final Logger log = LoggerFactory.getLogger(NatsKeyValueCache.class);
+
+    static private class CachedValue {
+        private final byte[] value;     // null if the key does not exist (or was deleted)
+        private final long revision;
+
+        public CachedValue(byte[] value, long revision) {
+            this.value = value;
+            this.revision = revision;
+        }
+    }
+
+    // a cached key, updated in place so its place in the eviction queue is kept
+    static private class Node {
+        private final String key;
+        private volatile CachedValue value;
+        private volatile boolean referenced;
+        private volatile boolean removed;
+
+        public Node(String key, CachedValue value) {
+            this.key = key;
+            this.value = value;
+            // it was just read, so it shouldn't be the first thing evicted
+            this.referenced = true;
+        }
+    }
+
+    // implemented here so its not in the public API
+    private class InternalWatcher implements KeyValueWatcher {
+        @Override
+        public void watch(KeyValueEntry kve) {
+            if (kve.getOperation() == KeyValueOperation.PUT) {
+                update(kve.getKey(), new CachedValue(kve.getValue(), kve.getRevision()), -1L);
+            } else {
+                // deletes are cached as missing (rather than removed), so an older read can't bring the key back
+                update(kve.getKey(), new CachedValue(null, kve.getRevision()), -1L);
+            }
+        }
+
+        @Override
+        public void endOfData() {
+            // nothing to do, we only watch for updates
+        }
+    }
+
+    // implemented here so its not in the public API
+    private class InternalConnectionListener implements ConnectionListener {
+        @Override
+        public void connectionEvent(Connection conn, Events type) {
+            if (type == Events.DISCONNECTED || type == Events.RECONNECTED) {
+                // the watcher may have missed updates while we were disconnected
+                log.debug("Connection to nats {} (will clear kv cache)", type.name());
+                invalidateAll();
+            }
+        }
+    }
+
+    private final Supplier<Connection> connectionSupplier;
+    private final String bucket;
+    private final InternalConnectionListener connectionListener;
+    private int maxEntries;
+    private final ConcurrentHashMap<String, Node> entries;
+    // the order keys were cached in, which eviction sweeps like the hand of a clock
+    private final ConcurrentLinkedQueue<Node> evictionQueue;
+    private final AtomicInteger evictionQueueSize;
+    private final Object evictionLock;
+    // keys currently being read from the nats server (w/ the number of reads of each)
+    private final ConcurrentHashMap<String, Integer> loading;
+    // bumped by invalidateAll(), so a read that started before it can't re-insert what it read
+    private final AtomicLong epoch;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private Connection connection;
+    private volatile KeyValue kv;
+    private AutoCloseable watchSubscription;
+
+    public NatsKeyValueCache(Connection connection, String bucket) {
+        this(() -> connection, bucket);
+    }
+
+    public NatsKeyValueCache(Supplier<Connection> connectionSupplier, String bucket) {
+        this.connectionSupplier = connectionSupplier;
+        this.bucket = bucket;
+        this.connectionListener = new InternalConnectionListener();
+        this.maxEntries = 10000;
+        this.entries = new ConcurrentHashMap<>();
+        this.evictionQueue = new ConcurrentLinkedQueue<>();
+        this.evictionQueueSize = new AtomicInteger();
+        this.evictionLock = new Object();
+        this.loading = new ConcurrentHashMap<>();
+        this.epoch = new AtomicLong();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Sets the max number of keys that are cached, after which the least recently used are (approximately) evicted
+     * (default is 10000). Must be set before start() is called.
+     * @param maxEntries the max number of keys to cache
+     * @return this cache
+     */
+    public NatsKeyValueCache setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    synchronized public NatsKeyValueCache start() throws NatsUnrecoverableException {
+        if (this.kv != null) {
+            throw new NatsUnrecoverableException("Cache already active", null);
+        }
+
+        try {
+            this.connection = this.connectionSupplier.get();
+            final KeyValue kv = this.connection.keyValue(this.bucket);
+            this.watchSubscription = kv.watchAll(new InternalWatcher(), KeyValueWatchOption.UPDATES_ONLY);
+            this.connection.addConnectionListener(this.connectionListener);
+            this.kv = kv;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NatsUnrecoverableException(e.getMessage(), e);
+        } catch (Exception e) {
+            throw new NatsUnrecoverableException(e.getMessage(), e);
+        }
+
+        return this;
+    }
+
+    synchronized public void stop() {
+        if (this.kv != null) {
+            try {
+                this.watchSubscription.close();
+            } catch (Exception e) {
+                log.warn("Nats kv watch unsubscribe failed (but we are ignoring it so that we can stop() the cache)", e);
+            }
+
+            this.connection.removeConnectionListener(this.connectionListener);
+
+            this.kv = null;
+            this.invalidateAll();
+            this.watchSubscription = null;
+            this.connection = null;
+        }
+    }
+
+    /**
+     * Gets the value of a key, from the cache if possible or otherwise from the nats server.
+     * @param key the key
+     * @return the value or null if the key does not exist
+     */
+    public byte[] get(String key) throws NatsRecoverableException, NatsUnrecoverableException {
+        final KeyValue kv = this.kv;
+        if (kv == null) {
+            throw new NatsUnrecoverableException("Cache is not active (did you forget to call .start() ?)", null);
+        }
+
+        final Node node = this.entries.get(key);
+        if (node != null) {
+            // only written if not already set, so hot keys don't keep invalidating each other's cpu caches
+            if (!node.referenced) {
+                node.referenced = true;
+            }
+            this.hits.increment();
+            return node.value.value;
+        }
+
+        this.misses.increment();
+
+        // captured before the read, so if the cache is invalidated while we read, we won't cache what we read
+        final long readEpoch = this.epoch.get();
+
+        // so the watcher knows to track this key while we read it
+        this.loading.merge(key, 1, Integer::sum);
+
+        // NOTE: the round trip is outside any lock, so other keys can still be served from the cache
+        CachedValue entry = null;
+        try {
+            final KeyValueEntry kve = kv.get(key);
+            // nats.java returns null for keys that don't exist (or were deleted)
+            entry = kve != null && kve.getOperation() == KeyValueOperation.PUT
+                ? new CachedValue(kve.getValue(), kve.getRevision())
+                : new CachedValue(null, kve != null ? kve.getRevision() : 0L);
+        } catch (JetStreamApiException | IOException e) {
+            throw new NatsRecoverableException(e.getMessage(), e);
+        } catch (IllegalStateException e) {
+            // nats.java uses this to represent a lot of various problems, from the connection being closed, etc.
+            // in general, we will classify any of these as "unrecoverable" to help the client know to restart everything
+            throw new NatsUnrecoverableException(e.getMessage(), e);
+        } finally {
+            if (entry != null) {
+                entry = this.update(key, entry, readEpoch);
+            }
+            this.loading.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+        }
+
+        return entry.value;
+    }
+
+    public String getString(String key) throws NatsRecoverableException, NatsUnrecoverableException {
+        final byte[] value = this.get(key);
+        return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+    }
+
+    public void invalidate(String key) {
+        final Node node = this.entries.remove(key);
+        if (node != null) {
+            node.removed = true;
+        }
+    }
+
+    public void invalidateAll() {
+        // bumped first, so any read in flight (or that lands in between) is not cached
+        this.epoch.incrementAndGet();
+        synchronized (this.evictionLock) {
+            for (Node node : this.entries.values()) {
+                node.removed = true;
+            }
+            this.entries.clear();
+            this.evictionQueue.clear();
+            this.evictionQueueSize.set(0);
+        }
+    }
+
+    /**
+     * Caches the value, unless a newer revision is already cached.
+     * @param readEpoch the epoch when the value was read from the nats server, or -1 if its from the watcher
+     * @return the value that is now the newest
+     */
+    private CachedValue update(String key, CachedValue entry, long readEpoch) {
+        final boolean watched = readEpoch < 0;
+        final CachedValue[] newest = new CachedValue[] { entry };
+        final Node[] inserted = new Node[1];
+
+        // NOTE: compute() is atomic per key, so the revision check and the update can't race with another update
+        this.entries.compute(key, (k, node) -> {
+            if (node == null) {
+                if (watched ? !this.loading.containsKey(k) : this.epoch.get() != readEpoch || this.kv == null) {
+                    // not a key we care about (or the cache was invalidated while it was read)
+                    return null;
+                }
+                inserted[0] = new Node(k, entry);
+                return inserted[0];
+            }
+            // the newest revision always wins (e.g. the watcher may have beat a slow read)
+            if (node.value.revision > entry.revision) {
+                newest[0] = node.value;
+            } else {
+                node.value = entry;
+            }
+            return node;
+        });
+
+        if (inserted[0] != null) {
+            this.evictionQueue.add(inserted[0]);
+            if (this.evictionQueueSize.incrementAndGet() > this.maxEntries) {
+                this.evict();
+            }
+        }
+
+        return newest[0];
+    }
+
+    private void evict() {
+        synchronized (this.evictionLock) {
+            while (this.evictionQueueSize.get() > this.maxEntries) {
+                final Node node = this.evictionQueue.poll();
+                if (node == null) {
+                    return;
+                }
+                if (node.removed) {
+                    // already invalidated
+                    this.evictionQueueSize.decrementAndGet();
+                } else if (node.referenced) {
+                    // read since the last sweep, so it gets a second chance
+                    node.referenced = false;
+                    this.evictionQueue.add(node);
+                } else {
+                    this.evictionQueueSize.decrementAndGet();
+                    node.removed = true;
+                    this.entries.remove(node.key, node);
+                }
+            }
+        }
+    }
+
+}
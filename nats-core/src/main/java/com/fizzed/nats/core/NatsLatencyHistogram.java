@@ -0,0 +1,121 @@
+package com.fizzed.nats.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free, allocation-free latency histogram. Latencies are recorded in nanoseconds into power-of-2 buckets, so
+ * percentiles are estimates (the upper bound of the bucket the percentile falls into), which is more than enough
+ * precision to see where time goes. Snapshots are cheap and do not block recording.
+ */
+public class NatsLatencyHistogram {
+
+    static private final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final AtomicLong max;
+
+    public NatsLatencyHistogram() {
+        this.buckets = new AtomicLongArray(BUCKETS);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        // bucket N holds values in the range [2^N, 2^(N+1)), with zero lumped into the first bucket
+        this.buckets.incrementAndGet(nanos == 0 ? 0 : BUCKETS - 1 - Long.numberOfLeadingZeros(nanos));
+        this.count.increment();
+        this.sum.add(nanos);
+
+        long currentMax = this.max.get();
+        while (nanos > currentMax && !this.max.compareAndSet(currentMax, nanos)) {
+            currentMax = this.max.get();
+        }
+    }
+
+    public Snapshot snapshot() {
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.buckets.get(i);
+        }
+        return new Snapshot(counts, this.count.sum(), this.sum.sum(), this.max.get());
+    }
+
+    static public class Snapshot {
+
+        private final long[] buckets;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] buckets, long count, long sum, long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMaxNanos() {
+            return max;
+        }
+
+        public long getMeanNanos() {
+            return this.count > 0 ? this.sum / this.count : 0L;
+        }
+
+        /**
+         * Estimates the latency at a percentile (e.g. 0.99) as the upper bound of the bucket it falls into.
+         * @param percentile the percentile between 0.0 and 1.0
+         * @return the estimated latency in nanoseconds
+         */
+        public long getPercentileNanos(double percentile) {
+            long total = 0;
+            for (long c : this.buckets) {
+                total += c;
+            }
+            if (total == 0) {
+                return 0L;
+            }
+
+            final long target = (long)Math.ceil(percentile * total);
+            long seen = 0;
+            for (int i = 0; i < this.buckets.length; i++) {
+                seen += this.buckets[i];
+                if (seen >= target && this.buckets[i] > 0) {
+                    // the upper bound of the bucket, but never more than the max actually recorded
+                    final long upper = i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                    return Math.min(upper, this.max);
+                }
+            }
+            return this.max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + this.count
+                + ", mean=" + toMicros(this.getMeanNanos())
+                + "us, p50=" + toMicros(this.getPercentileNanos(0.50))
+                + "us, p99=" + toMicros(this.getPercentileNanos(0.99))
+                + "us, max=" + toMicros(this.max) + "us";
+        }
+
+        static private long toMicros(long nanos) {
+            return TimeUnit.NANOSECONDS.toMicros(nanos);
+        }
+
+    }
+
+}
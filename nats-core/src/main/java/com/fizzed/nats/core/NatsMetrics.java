@@ -0,0 +1,201 @@
+package com.fizzed.nats.core;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional metrics for the reliable publisher and subscriber. Recording is lock-free and allocation-free, so a single
+ * instance can be safely shared across many publishers and subscribers. Metrics are disabled by default (e.g. the
+ * publisher or subscriber has no metrics set), in which case nothing is timed or recorded at all.
+ */
+public class NatsMetrics {
+
+    private final NatsLatencyHistogram fetchLatency;
+    private final NatsLatencyHistogram ackLatency;
+    private final NatsLatencyHistogram ackSyncLatency;
+    private final NatsLatencyHistogram publishLatency;
+    private final NatsLatencyHistogram recoveryLatency;
+    private final LongAdder fetchRequested;
+    private final LongAdder fetchReceived;
+    private final LongAdder emptyPolls;
+    private final LongAdder recoverableExceptions;
+    private final LongAdder unrecoverableExceptions;
+    private final LongAdder timeouts;
+
+    public NatsMetrics() {
+        this.fetchLatency = new NatsLatencyHistogram();
+        this.ackLatency = new NatsLatencyHistogram();
+        this.ackSyncLatency = new NatsLatencyHistogram();
+        this.publishLatency = new NatsLatencyHistogram();
+        this.recoveryLatency = new NatsLatencyHistogram();
+        this.fetchRequested = new LongAdder();
+        this.fetchReceived = new LongAdder();
+        this.emptyPolls = new LongAdder();
+        this.recoverableExceptions = new LongAdder();
+        this.unrecoverableExceptions = new LongAdder();
+        this.timeouts = new LongAdder();
+    }
+
+    public void recordFetch(int requested, int received, long nanos) {
+        this.fetchLatency.record(nanos);
+        this.fetchRequested.add(requested);
+        this.fetchReceived.add(received);
+        if (received <= 0) {
+            this.emptyPolls.increment();
+        }
+    }
+
+    public void recordAck(long nanos) {
+        this.ackLatency.record(nanos);
+    }
+
+    public void recordAckSync(long nanos) {
+        this.ackSyncLatency.record(nanos);
+    }
+
+    public void recordPublish(long nanos) {
+        this.publishLatency.record(nanos);
+    }
+
+    /**
+     * Records how long a subscriber was down, from when the failure was detected until it was subscribed again.
+     * @param nanos the downtime
+     */
+    public void recordRecovery(long nanos) {
+        this.recoveryLatency.record(nanos);
+    }
+
+    public void recordException(Throwable t) {
+        if (t instanceof NatsRecoverableException) {
+            this.recoverableExceptions.increment();
+        } else if (t instanceof NatsUnrecoverableException) {
+            this.unrecoverableExceptions.increment();
+        } else if (t instanceof TimeoutException) {
+            // e.g. an ack the nats server did not confirm in time
+            this.timeouts.increment();
+        }
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(
+            this.fetchLatency.snapshot(),
+            this.ackLatency.snapshot(),
+            this.ackSyncLatency.snapshot(),
+            this.publishLatency.snapshot(),
+            this.recoveryLatency.snapshot(),
+            this.fetchRequested.sum(),
+            this.fetchReceived.sum(),
+            this.emptyPolls.sum(),
+            this.recoverableExceptions.sum(),
+            this.unrecoverableExceptions.sum(),
+            this.timeouts.sum());
+    }
+
+    static public class Snapshot {
+
+        private final NatsLatencyHistogram.Snapshot fetchLatency;
+        private final NatsLatencyHistogram.Snapshot ackLatency;
+        private final NatsLatencyHistogram.Snapshot ackSyncLatency;
+        private final NatsLatencyHistogram.Snapshot publishLatency;
+        private final NatsLatencyHistogram.Snapshot recoveryLatency;
+        private final long fetchRequested;
+        private final long fetchReceived;
+        private final long emptyPolls;
+        private final long recoverableExceptions;
+        private final long unrecoverableExceptions;
+        private final long timeouts;
+
+        private Snapshot(
+                NatsLatencyHistogram.Snapshot fetchLatency,
+                NatsLatencyHistogram.Snapshot ackLatency,
+                NatsLatencyHistogram.Snapshot ackSyncLatency,
+                NatsLatencyHistogram.Snapshot publishLatency,
+                NatsLatencyHistogram.Snapshot recoveryLatency,
+                long fetchRequested,
+                long fetchReceived,
+                long emptyPolls,
+                long recoverableExceptions,
+                long unrecoverableExceptions,
+                long timeouts) {
+            this.fetchLatency = fetchLatency;
+            this.ackLatency = ackLatency;
+            this.ackSyncLatency = ackSyncLatency;
+            this.publishLatency = publishLatency;
+            this.recoveryLatency = recoveryLatency;
+            this.fetchRequested = fetchRequested;
+            this.fetchReceived = fetchReceived;
+            this.emptyPolls = emptyPolls;
+            this.recoverableExceptions = recoverableExceptions;
+            this.unrecoverableExceptions = unrecoverableExceptions;
+            this.timeouts = timeouts;
+        }
+
+        public NatsLatencyHistogram.Snapshot getFetchLatency() {
+            return fetchLatency;
+        }
+
+        public NatsLatencyHistogram.Snapshot getAckLatency() {
+            return ackLatency;
+        }
+
+        public NatsLatencyHistogram.Snapshot getAckSyncLatency() {
+            return ackSyncLatency;
+        }
+
+        public NatsLatencyHistogram.Snapshot getPublishLatency() {
+            return publishLatency;
+        }
+
+        public NatsLatencyHistogram.Snapshot getRecoveryLatency() {
+            return recoveryLatency;
+        }
+
+        public long getFetchRequested() {
+            return fetchRequested;
+        }
+
+        public long getFetchReceived() {
+            return fetchReceived;
+        }
+
+        /**
+         * Gets the ratio of messages received vs. requested across all fetches (e.g. 1.0 means every batch was full).
+         * @return the batch fill ratio between 0.0 and 1.0
+         */
+        public double getBatchFillRatio() {
+            return this.fetchRequested > 0 ? (double)this.fetchReceived / this.fetchRequested : 0.0d;
+        }
+
+        public long getEmptyPolls() {
+            return emptyPolls;
+        }
+
+        public long getRecoverableExceptions() {
+            return recoverableExceptions;
+        }
+
+        public long getUnrecoverableExceptions() {
+            return unrecoverableExceptions;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        @Override
+        public String toString() {
+            return "fetch: " + this.fetchLatency
+                + ", fillRatio=" + String.format("%.2f", this.getBatchFillRatio())
+                + ", emptyPolls=" + this.emptyPolls + "\n"
+                + "ack: " + this.ackLatency + "\n"
+                + "ackSync: " + this.ackSyncLatency + "\n"
+                + "publish: " + this.publishLatency + "\n"
+                + "recovery: " + this.recoveryLatency + "\n"
+                + "exceptions: recoverable=" + this.recoverableExceptions
+                + ", unrecoverable=" + this.unrecoverableExceptions
+                + ", timeouts=" + this.timeouts;
+        }
+
+    }
+
+}
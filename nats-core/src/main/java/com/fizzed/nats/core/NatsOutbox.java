@@ -0,0 +1,756 @@
+package com.fizzed.nats.core;
+
+import io.nats.client.JetStreamApiException;
+import io.nats.client.Message;
+import io.nats.client.NUID;
+import io.nats.client.impl.Headers;
+import io.nats.client.impl.NatsMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+import static io.nats.client.support.NatsJetStreamConstants.MSG_ID_HDR;
+
+/**
+ * A local store-and-forward outbox for publishing. Messages are appended to a memory-mapped, segmented, append-only
+ * log on local disk and append() returns immediately, regardless of whether the nats server is even reachable. A
+ * background forwarder drains the log into JetStream in pipelined batches via a publisher, durably checkpoints its
+ * progress, and deletes segments once every message in them has been acked.
+ *
+ * Every forwarded message is stamped with a Nats-Msg-Id derived from the outbox and the position of the message in
+ * the log (unless it already has one), so if the process restarts and re-forwards messages since the last checkpoint,
+ * the stream discards the ones it already has (as long as it happens within its duplicate window).
+ *
+ * The log survives a restart of the process, since writes land in the page cache of the OS right away. Surviving a
+ * crash of the OS itself would require forcing every write to disk, which would defeat the purpose, so stop() is the
+ * only time the log is forced to disk.
+ *
+ * Messages are forwarded in the order they were appended. A message that fails to publish is retried (along with
+ * every message after it) until it succeeds, unless it was rejected in a way retrying will never fix (e.g. its payload
+ * is larger than the max payload of the nats server or the max msg size of the stream), in which case its handed to
+ * the dead letter listener and skipped, rather than wedging the log.
+ */
+public class NatsOutbox {
+    static private final Logger log = LoggerFactory.getLogger(NatsOutbox.class);
+
+    // each record is its length, a crc32 of its body, and then its body
+    static private final int RECORD_HEADER_SIZE = 8;
+    // marks the rest of a segment as unused, the log continues in the next segment
+    static private final int END_OF_SEGMENT = -1;
+    static private final String SEGMENT_SUFFIX = ".seg";
+    static private final String ID_FILE = "outbox.id";
+    static private final String CHECKPOINT_FILE = "checkpoint";
+
+    static private class Position {
+        private final long segment;
+        private final int offset;
+
+        public Position(long segment, int offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+
+    private final NatsReliableStreamPublisher publisher;
+    private final Path directory;
+    private int segmentSize;
+    private int batchSize;
+    private NatsBackoff retryBackoff;
+    private boolean virtualThreads;
+    private NatsDeadLetterListener deadLetterListener;
+    private final ConcurrentHashMap<Long, MappedByteBuffer> segments;
+    private final LongAdder appended;
+    private final LongAdder forwarded;
+    private final LongAdder deadLettered;
+    private String outboxId;
+    // writing (guarded by this)
+    private MappedByteBuffer writeBuffer;
+    private long writeSegment;
+    private int writeOffset;
+    // published by the writer, so the forwarder only ever reads complete records
+    private volatile Position writePosition;
+    // published by the forwarder once a batch is acked and checkpointed
+    private volatile Position checkpoint;
+    private volatile boolean forwarding;
+    private Thread forwarderThread;
+
+    public NatsOutbox(NatsReliableStreamPublisher publisher, Path directory) {
+        this.publisher = publisher;
+        this.directory = directory;
+        this.segmentSize = 64 * 1024 * 1024;
+        this.batchSize = 100;
+        this.retryBackoff = new NatsBackoff(Duration.ofMillis(100L), Duration.ofSeconds(10));
+        this.segments = new ConcurrentHashMap<>();
+        this.appended = new LongAdder();
+        this.forwarded = new LongAdder();
+        this.deadLettered = new LongAdder();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Sets the size of each segment of the log (default is 64MB). A message larger than a segment can't be appended.
+     * Must be set before start() is called.
+     * @param segmentSize the size of each segment in bytes
+     * @return this outbox
+     */
+    public NatsOutbox setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the max number of messages the forwarder publishes pipelined before it waits for their acks and
+     * checkpoints (default is 100).
+     * @param batchSize the max number of messages per batch
+     * @return this outbox
+     */
+    public NatsOutbox setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public NatsBackoff getRetryBackoff() {
+        return retryBackoff;
+    }
+
+    /**
+     * Sets the backoff between attempts to forward a batch that failed (default is 100ms to 10 secs). The forwarder
+     * never gives up on a message that failed for a reason that may go away (e.g. the nats server is unreachable), so
+     * it will keep retrying until the nats server is reachable again.
+     * @param retryBackoff the backoff
+     * @return this outbox
+     */
+    public NatsOutbox setRetryBackoff(NatsBackoff retryBackoff) {
+        this.retryBackoff = retryBackoff;
+        return this;
+    }
+
+    public NatsDeadLetterListener getDeadLetterListener() {
+        return deadLetterListener;
+    }
+
+    /**
+     * Sets the listener for messages that were rejected in a way retrying will never fix, which are skipped once the
+     * listener returns. If null (the default), they are logged as errors and skipped.
+     * @param deadLetterListener the listener or null
+     * @return this outbox
+     */
+    public NatsOutbox setDeadLetterListener(NatsDeadLetterListener deadLetterListener) {
+        this.deadLetterListener = deadLetterListener;
+        return this;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Sets whether the background forwarding thread should be a virtual thread (on Java 21+).
+     * @param virtualThreads true to prefer a virtual thread
+     * @return this outbox
+     */
+    public NatsOutbox setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * Gets the number of messages appended by this outbox (since it was created).
+     * @return the number of messages appended
+     */
+    public long getAppendedCount() {
+        return this.appended.sum();
+    }
+
+    /**
+     * Gets the number of messages forwarded (and acked) by this outbox (since it was created).
+     * @return the number of messages forwarded
+     */
+    public long getForwardedCount() {
+        return this.forwarded.sum();
+    }
+
+    /**
+     * Gets the number of messages that were rejected and skipped by this outbox (since it was created).
+     * @return the number of dead letters
+     */
+    public long getDeadLetterCount() {
+        return this.deadLettered.sum();
+    }
+
+    public int getSegmentCount() {
+        return this.segments.size();
+    }
+
+    /**
+     * Gets whether every message appended to the log has been forwarded and acked.
+     * @return true if the log is drained
+     */
+    public boolean isDrained() {
+        final Position w = this.writePosition;
+        final Position c = this.checkpoint;
+        return w != null && c != null && c.segment == w.segment && c.offset >= w.offset;
+    }
+
+    synchronized public NatsOutbox start() throws NatsUnrecoverableException {
+        if (this.writeBuffer != null) {
+            throw new NatsUnrecoverableException("Outbox already active", null);
+        }
+
+        if (this.forwarderThread != null) {
+            if (this.forwarderThread.isAlive()) {
+                // it'd be reading segments we are about to remap
+                throw new NatsUnrecoverableException("Outbox forwarder from the last start() has still not exited", null);
+            }
+            this.forwarderThread = null;
+            this.segments.clear();
+        }
+
+        try {
+            Files.createDirectories(this.directory);
+
+            this.outboxId = this.readOrCreateId();
+
+            final TreeSet<Long> segmentIds = this.listSegments();
+            Position cp = this.readCheckpoint();
+            if (cp == null) {
+                cp = new Position(segmentIds.isEmpty() ? 0L : segmentIds.first(), 0);
+            }
+
+            // anything before the checkpoint was already forwarded (we likely stopped before deleting it)
+            for (Long segmentId : segmentIds.headSet(cp.segment)) {
+                Files.deleteIfExists(this.segmentPath(segmentId));
+            }
+
+            for (Long segmentId : segmentIds.tailSet(cp.segment)) {
+                this.segments.put(segmentId, this.mapSegment(segmentId));
+            }
+
+            if (this.segments.isEmpty()) {
+                this.segments.put(cp.segment, this.mapSegment(cp.segment));
+            }
+
+            // the writer resumes at the end of the last segment
+            this.writeSegment = segmentIds.isEmpty() || segmentIds.last() < cp.segment ? cp.segment : segmentIds.last();
+            this.writeBuffer = this.segments.get(this.writeSegment);
+            this.writeOffset = this.recoverWriteOffset(this.writeBuffer, this.writeSegment == cp.segment ? cp.offset : 0);
+            this.writePosition = new Position(this.writeSegment, this.writeOffset);
+            this.checkpoint = cp;
+
+            log.debug("Nats outbox {} started (checkpoint at segment {} offset {}, writing at segment {} offset {})",
+                this.directory, cp.segment, cp.offset, this.writeSegment, this.writeOffset);
+        } catch (IOException e) {
+            this.segments.clear();
+            this.writeBuffer = null;
+            throw new NatsUnrecoverableException(e.getMessage(), e);
+        }
+
+        this.forwarding = true;
+        this.forwarderThread = NatsThreads.newThread("nats-outbox-forwarder", this.virtualThreads, this::runForwarder);
+        this.forwarderThread.start();
+
+        return this;
+    }
+
+    synchronized public void stop() {
+        if (this.forwarderThread != null) {
+            this.forwarding = false;
+            this.forwarderThread.interrupt();
+            try {
+                this.forwarderThread.join(5000L);
+            } catch (InterruptedException e) {
+                // restore the interrupt, we still want to finish stopping
+                Thread.currentThread().interrupt();
+            }
+            if (this.forwarderThread.isAlive()) {
+                log.warn("Nats outbox forwarder thread did not exit in time (will continue stopping anyway)");
+            } else {
+                this.forwarderThread = null;
+            }
+        }
+
+        if (this.writeBuffer != null) {
+            for (MappedByteBuffer buffer : this.segments.values()) {
+                buffer.force();
+            }
+            this.writeBuffer = null;
+            // a forwarder that is still running is still reading them, it'll exit as soon as its publish returns
+            if (this.forwarderThread == null) {
+                this.segments.clear();
+            }
+        }
+    }
+
+    /**
+     * Appends the message to the log, which will be forwarded to the nats server in the background. This never waits
+     * on the nats server, so its latency is the same whether the nats server is reachable or not. The reply to of
+     * the message is not kept (it isn't used by JetStream publishing anyway).
+     * @param message the message to append
+     * @throws NatsUnrecoverableException if the outbox is not active or the message is larger than a segment
+     * @throws NatsRecoverableException if a new segment could not be created (e.g. the disk is full)
+     */
+    public void append(Message message) throws NatsUnrecoverableException, NatsRecoverableException {
+        // encode outside the lock, so only the copy into the log is serialized
+        final byte[] body;
+        try {
+            body = encode(message);
+        } catch (IOException | RuntimeException e) {
+            throw new NatsUnrecoverableException(e.getMessage(), e);
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(body);
+
+        final Thread forwarder;
+        synchronized (this) {
+            if (this.writeBuffer == null) {
+                throw new NatsUnrecoverableException("Outbox is not active (did you forget to call .start() ?)", null);
+            }
+
+            // room is always left for an end of segment marker
+            final int recordSize = RECORD_HEADER_SIZE + body.length;
+            if (recordSize + 4 > this.segmentSize) {
+                throw new NatsUnrecoverableException("Message of " + body.length + " bytes is too large for an outbox segment of "
+                    + this.segmentSize + " bytes", null);
+            }
+
+            if (this.writeOffset + recordSize + 4 > this.writeBuffer.capacity()) {
+                this.rollSegment();
+            }
+
+            // the length is written last, so a record is never seen (even after a crash) until its complete
+            final ByteBuffer buffer = this.writeBuffer.duplicate();
+            buffer.position(this.writeOffset + RECORD_HEADER_SIZE);
+            buffer.put(body);
+            this.writeBuffer.putInt(this.writeOffset + 4, (int)crc.getValue());
+            this.writeBuffer.putInt(this.writeOffset, body.length);
+            this.writeOffset += recordSize;
+            this.writePosition = new Position(this.writeSegment, this.writeOffset);
+            forwarder = this.forwarderThread;
+        }
+
+        this.appended.increment();
+
+        if (forwarder != null) {
+            LockSupport.unpark(forwarder);
+        }
+    }
+
+    private void rollSegment() throws NatsRecoverableException {
+        final long nextSegment = this.writeSegment + 1;
+
+        final MappedByteBuffer nextBuffer;
+        try {
+            nextBuffer = this.mapSegment(nextSegment);
+        } catch (IOException e) {
+            throw new NatsRecoverableException(e.getMessage(), e);
+        }
+
+        // the next segment must exist before the forwarder can see the marker pointing to it
+        this.segments.put(nextSegment, nextBuffer);
+        this.writeBuffer.putInt(this.writeOffset, END_OF_SEGMENT);
+        this.writeBuffer = nextBuffer;
+        this.writeSegment = nextSegment;
+        this.writeOffset = 0;
+    }
+
+    private void runForwarder() {
+        log.debug("Nats outbox forwarder started");
+
+        long readSegment = this.checkpoint.segment;
+        int readOffset = this.checkpoint.offset;
+        int failures = 0;
+
+        while (this.forwarding) {
+            try {
+                // NOTE: reading the volatile write position guarantees every record before it is visible to this thread
+                final Position limit = this.writePosition;
+                final List<Message> batch = new ArrayList<>(this.batchSize);
+
+                while (batch.size() < this.batchSize) {
+                    if (readSegment == limit.segment && readOffset >= limit.offset) {
+                        break;
+                    }
+
+                    final MappedByteBuffer buffer = this.segments.get(readSegment);
+                    if (buffer == null) {
+                        throw new IllegalStateException("Segment " + readSegment + " is not mapped");
+                    }
+                    final int length = readOffset + 4 <= buffer.capacity() ? buffer.getInt(readOffset) : END_OF_SEGMENT;
+                    if (length <= 0 || readOffset + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+                        // the rest of this segment is unused (or was never marked if we crashed while rolling)
+                        if (length > 0) {
+                            log.error("Nats outbox record at segment {} offset {} is corrupt (will skip the rest of the segment)",
+                                readSegment, readOffset);
+                        }
+                        readSegment++;
+                        readOffset = 0;
+                        continue;
+                    }
+
+                    final Message message = this.readRecord(buffer, readSegment, readOffset, length);
+                    readOffset += RECORD_HEADER_SIZE + length;
+                    if (message != null) {
+                        batch.add(message);
+                    }
+                }
+
+                final Position end = new Position(readSegment, readOffset);
+
+                if (batch.isEmpty()) {
+                    if (end.segment != this.checkpoint.segment || end.offset != this.checkpoint.offset) {
+                        // we moved past the end of a segment (or a corrupt record)
+                        this.advanceCheckpoint(end);
+                    }
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100L));
+                    continue;
+                }
+
+                if (!this.forwardBatch(batch)) {
+                    // we are stopping, whatever was in flight will be forwarded again (and deduped) on the next start()
+                    break;
+                }
+
+                this.advanceCheckpoint(end);
+                failures = 0;
+            } catch (RuntimeException e) {
+                // the forwarder must never silently die while append() keeps accepting messages, so we start over from
+                // the last checkpoint (anything forwarded since will be deduped by the stream)
+                final long delayMillis = this.retryBackoff.getDelayMillis(failures++);
+                log.error("Nats outbox forwarder unexpected exception (will restart from the last checkpoint in {} ms)",
+                    delayMillis, e);
+                readSegment = this.checkpoint.segment;
+                readOffset = this.checkpoint.offset;
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException ie) {
+                    // we are either stopping or were interrupted, either way the loop will decide
+                }
+            }
+        }
+
+        log.debug("Nats outbox forwarder exiting");
+    }
+
+    private boolean forwardBatch(List<Message> batch) {
+        List<Message> pending = batch;
+
+        for (int attempt = 0; this.forwarding; attempt++) {
+            final List<NatsPublishResult> results;
+            try {
+                results = this.publisher.publishAll(pending);
+            } catch (InterruptedException e) {
+                // we are either stopping or were interrupted, either way the loop will decide
+                continue;
+            }
+
+            // everything up to the first failure that may go away is done with, everything from it onwards is retried
+            // (even if some of it succeeded) so that messages are always forwarded in order
+            int retryFrom = results.size();
+            for (int i = 0; i < results.size(); i++) {
+                final NatsPublishResult result = results.get(i);
+                if (result.isSuccess()) {
+                    this.forwarded.increment();
+                } else if (isRejected(result)) {
+                    this.deadLetter(result);
+                } else {
+                    retryFrom = i;
+                    break;
+                }
+            }
+
+            if (retryFrom >= results.size()) {
+                return true;
+            }
+
+            final Exception exception = results.get(retryFrom).getException();
+            final long delayMillis = this.retryBackoff.getDelayMillis(attempt);
+            log.warn("Nats outbox failed to forward {} of {} msgs (will retry in {} ms): {}",
+                results.size() - retryFrom, pending.size(), delayMillis, exception != null ? exception.getMessage() : null);
+            pending = new ArrayList<>(pending.subList(retryFrom, pending.size()));
+
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                // we are either stopping or were interrupted, either way the loop will decide
+            }
+        }
+
+        return false;
+    }
+
+    static private boolean isRejected(NatsPublishResult result) {
+        if (result.isSuccess()) {
+            return false;
+        }
+        final Throwable cause = result.getException().getCause();
+        if (result.isRecoverable()) {
+            // most errors from the stream are worth retrying (e.g. no leader yet), but some reject the message itself
+            return cause instanceof JetStreamApiException
+                && isPermanentApiError(((JetStreamApiException)cause).getApiErrorCode());
+        }
+        // the publisher not being active, the connection being closed, etc. are unrecoverable for the publisher, but
+        // have nothing to do with the message itself, so its retried until a working publisher is available
+        return cause != null && !(cause instanceof IllegalStateException);
+    }
+
+    static private boolean isPermanentApiError(int apiErrorCode) {
+        switch (apiErrorCode) {
+            case 10054:     // message size exceeds the max msg size of the stream
+            case 10060:     // expected stream does not match
+            case 10070:     // wrong expected last msg id
+            case 10071:     // wrong expected last sequence
+            case 10077:     // store failed, e.g. max msgs or max bytes exceeded on a discard new stream
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void deadLetter(NatsPublishResult result) {
+        this.deadLettered.increment();
+
+        final NatsDeadLetterListener listener = this.deadLetterListener;
+        if (listener == null) {
+            log.error("Nats outbox message on subject {} was rejected (will skip it): {}",
+                result.getMessage().getSubject(), result.getException().getMessage());
+            return;
+        }
+
+        try {
+            listener.deadLetter(result.getMessage(), result.getException());
+        } catch (Exception e) {
+            log.warn("Nats outbox dead letter listener failed (will skip the message anyway)", e);
+        }
+    }
+
+    private void advanceCheckpoint(Position end) {
+        final Position previous = this.checkpoint;
+
+        try {
+            this.writeCheckpoint(end);
+        } catch (IOException e) {
+            // not fatal, on a restart we'll start from an older checkpoint and the stream will dedupe
+            log.warn("Nats outbox failed to write its checkpoint (will try again on the next batch)", e);
+            return;
+        }
+
+        this.checkpoint = end;
+
+        // fully forwarded segments are no longer needed
+        for (long segmentId = previous.segment; segmentId < end.segment; segmentId++) {
+            this.segments.remove(segmentId);
+            try {
+                Files.deleteIfExists(this.segmentPath(segmentId));
+            } catch (IOException e) {
+                // e.g. on windows a mapped file can't be deleted until its garbage collected, start() will clean it up
+                log.debug("Nats outbox failed to delete segment {} (will be deleted on the next start)", segmentId, e);
+            }
+        }
+    }
+
+    private Message readRecord(MappedByteBuffer buffer, long segment, int offset, int length) {
+        final byte[] body = new byte[length];
+        final ByteBuffer b = buffer.duplicate();
+        b.position(offset + RECORD_HEADER_SIZE);
+        b.get(body);
+
+        final CRC32 crc = new CRC32();
+        crc.update(body);
+
+        try {
+            if ((int)crc.getValue() != buffer.getInt(offset + 4)) {
+                throw new IOException("crc mismatch");
+            }
+            // the id is derived from where the message is in the log, so its the same if its ever forwarded again
+            return decode(body, this.outboxId + "-" + segment + "-" + offset);
+        } catch (IOException | RuntimeException e) {
+            log.error("Nats outbox record at segment {} offset {} is corrupt (will skip it)", segment, offset, e);
+            return null;
+        }
+    }
+
+    private int recoverWriteOffset(MappedByteBuffer buffer, int offset) {
+        while (offset + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            final int length = buffer.getInt(offset);
+            if (length <= 0 || offset + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+
+            final byte[] body = new byte[length];
+            final ByteBuffer b = buffer.duplicate();
+            b.position(offset + RECORD_HEADER_SIZE);
+            b.get(body);
+
+            final CRC32 crc = new CRC32();
+            crc.update(body);
+
+            if ((int)crc.getValue() != buffer.getInt(offset + 4)) {
+                // a torn write from a crash, it will simply be overwritten
+                log.warn("Nats outbox record at offset {} is incomplete (will be overwritten)", offset);
+                buffer.putInt(offset, 0);
+                break;
+            }
+
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    private MappedByteBuffer mapSegment(long segmentId) throws IOException {
+        // NOTE: the mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(this.segmentPath(segmentId),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), this.segmentSize));
+        }
+    }
+
+    private Path segmentPath(long segmentId) {
+        return this.directory.resolve(String.format("%020d%s", segmentId, SEGMENT_SUFFIX));
+    }
+
+    private TreeSet<Long> listSegments() throws IOException {
+        final TreeSet<Long> segmentIds = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                final String name = file.getFileName().toString();
+                try {
+                    segmentIds.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.warn("Nats outbox ignoring unexpected file {}", file);
+                }
+            }
+        }
+        return segmentIds;
+    }
+
+    private String readOrCreateId() throws IOException {
+        final Path file = this.directory.resolve(ID_FILE);
+        if (Files.exists(file)) {
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+        }
+        final String id = NUID.nextGlobal();
+        this.writeAtomically(file, id.getBytes(StandardCharsets.UTF_8));
+        return id;
+    }
+
+    private Position readCheckpoint() throws IOException {
+        final Path file = this.directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        return new Position(buffer.getLong(), buffer.getInt());
+    }
+
+    private void writeCheckpoint(Position position) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(12);
+        buffer.putLong(position.segment);
+        buffer.putInt(position.offset);
+        this.writeAtomically(this.directory.resolve(CHECKPOINT_FILE), buffer.array());
+    }
+
+    private void writeAtomically(Path file, byte[] bytes) throws IOException {
+        // a rename is atomic, so a crash can never leave us with a partially written file
+        final Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tempFile, bytes);
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static private byte[] encode(Message message) throws IOException {
+        final byte[] data = message.getData();
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(64 + (data != null ? data.length : 0));
+        final DataOutputStream output = new DataOutputStream(baos);
+
+        output.writeUTF(message.getSubject());
+
+        final Headers headers = message.getHeaders();
+        if (headers == null || headers.isEmpty()) {
+            output.writeInt(0);
+        } else {
+            output.writeInt(headers.size());
+            for (String key : headers.keySet()) {
+                final List<String> values = headers.get(key);
+                output.writeUTF(key);
+                output.writeInt(values.size());
+                for (String value : values) {
+                    output.writeUTF(value);
+                }
+            }
+        }
+
+        if (data == null) {
+            output.writeInt(0);
+        } else {
+            output.writeInt(data.length);
+            output.write(data);
+        }
+
+        output.flush();
+        return baos.toByteArray();
+    }
+
+    static private Message decode(byte[] body, String msgId) throws IOException {
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(body));
+
+        final String subject = input.readUTF();
+
+        final Headers headers = new Headers();
+        final int keyCount = input.readInt();
+        for (int i = 0; i < keyCount; i++) {
+            final String key = input.readUTF();
+            final int valueCount = input.readInt();
+            for (int j = 0; j < valueCount; j++) {
+                headers.add(key, input.readUTF());
+            }
+        }
+
+        if (headers.getFirst(MSG_ID_HDR) == null) {
+            headers.put(MSG_ID_HDR, msgId);
+        }
+
+        final byte[] data = new byte[input.readInt()];
+        input.readFully(data);
+
+        return NatsMessage.builder()
+            .subject(subject)
+            .headers(headers)
+            .data(data)
+            .build();
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.fizzed.nats.core;
+
+import io.nats.client.Message;
+import io.nats.client.api.PublishAck;
+
+/**
+ * The result of publishing a single message as part of a bulk publish. Either the ack or the exception will be set.
+ */
+public class NatsPublishResult {
+
+    private final Message message;
+    private final PublishAck ack;
+    private final Exception exception;
+
+    public NatsPublishResult(Message message, PublishAck ack, Exception exception) {
+        this.message = message;
+        this.ack = ack;
+        this.exception = exception;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public PublishAck getAck() {
+        return ack;
+    }
+
+    /**
+     * Gets the exception if the publish failed, which will either be a NatsRecoverableException or a
+     * NatsUnrecoverableException.
+     * @return the exception or null if the publish succeeded
+     */
+    public Exception getException() {
+        return exception;
+    }
+
+    public boolean isSuccess() {
+        return this.exception == null;
+    }
+
+    /**
+     * Whether the publish failed, but it is safe to retry it.
+     * @return true if the publish failed with a recoverable exception
+     */
+    public boolean isRecoverable() {
+        return this.exception instanceof NatsRecoverableException;
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.fizzed.nats.core;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the stream sequences of recently completed (acked) messages, so that a redelivery of one of them (e.g.
+ * after an ack was lost to a timeout or reconnect) can be acked again without processing it twice. Memory is bounded
+ * by the capacity, after which the oldest sequences are forgotten. Sequences are stored as primitive longs in an open
+ * addressing hash set, w/ a ring buffer recording the order they were added in, so neither adding nor checking a
+ * sequence allocates.
+ *
+ * An instance must only be used for a single stream, since stream sequences are only unique within a stream.
+ */
+public class NatsRedeliveryDedup {
+
+    private final int capacity;
+    // insertion order, so the oldest can be evicted once we're at capacity
+    private final long[] ring;
+    // open addressing w/ linear probing, stream sequences start at 1 so 0 marks an empty slot
+    private final long[] table;
+    private final int mask;
+    private final LongAdder duplicates;
+    private int head;
+    private int size;
+
+    public NatsRedeliveryDedup() {
+        this(100000);
+    }
+
+    /**
+     * @param capacity the max number of completed sequences remembered (e.g. a few times the number of messages that
+     *                 can be in flight at once is plenty)
+     */
+    public NatsRedeliveryDedup(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be >= 1");
+        }
+        this.capacity = capacity;
+        this.ring = new long[capacity];
+        // keep the load factor <= 0.5 so probes stay short
+        int tableSize = Integer.highestOneBit(capacity) << 2;
+        this.table = new long[tableSize];
+        this.mask = tableSize - 1;
+        this.duplicates = new LongAdder();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    synchronized public int size() {
+        return this.size;
+    }
+
+    /**
+     * Gets the number of redeliveries that were detected as duplicates.
+     * @return the number of duplicates
+     */
+    public long getDuplicateCount() {
+        return this.duplicates.sum();
+    }
+
+    /**
+     * Records that the message with this stream sequence was completed.
+     * @param sequence the stream sequence
+     */
+    synchronized public void add(long sequence) {
+        if (sequence <= 0 || this.indexOf(sequence) >= 0) {
+            return;
+        }
+
+        if (this.size == this.capacity) {
+            this.remove(this.ring[this.head]);
+        } else {
+            this.size++;
+        }
+
+        this.ring[this.head] = sequence;
+        this.head = this.head + 1 == this.capacity ? 0 : this.head + 1;
+
+        int i = this.slot(sequence);
+        while (this.table[i] != 0L) {
+            i = (i + 1) & this.mask;
+        }
+        this.table[i] = sequence;
+    }
+
+    synchronized public boolean contains(long sequence) {
+        return sequence > 0 && this.indexOf(sequence) >= 0;
+    }
+
+    /**
+     * Checks if the message with this stream sequence was already completed, and if so counts it as a duplicate.
+     * @param sequence the stream sequence
+     * @return true if its a duplicate
+     */
+    public boolean isDuplicate(long sequence) {
+        if (this.contains(sequence)) {
+            this.duplicates.increment();
+            return true;
+        }
+        return false;
+    }
+
+    private int indexOf(long sequence) {
+        int i = this.slot(sequence);
+        long v;
+        while ((v = this.table[i]) != 0L) {
+            if (v == sequence) {
+                return i;
+            }
+            i = (i + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    private void remove(long sequence) {
+        int i = this.indexOf(sequence);
+        if (i < 0) {
+            return;
+        }
+
+        // backward shift deletion, so lookups never need tombstones
+        int j = i;
+        while (true) {
+            j = (j + 1) & this.mask;
+            final long v = this.table[j];
+            if (v == 0L) {
+                break;
+            }
+            final int k = this.slot(v);
+            // move v into the hole at i, unless its home slot k lies cyclically in (i, j]
+            if ((j > i && (k <= i || k > j)) || (j < i && (k <= i && k > j))) {
+                this.table[i] = v;
+                i = j;
+            }
+        }
+        this.table[i] = 0L;
+    }
+
+    private int slot(long sequence) {
+        // sequences are sequential, so spread them out (fibonacci hashing)
+        return (int)((sequence * 0x9E3779B97F4A7C15L) >>> 32) & this.mask;
+    }
+
+}
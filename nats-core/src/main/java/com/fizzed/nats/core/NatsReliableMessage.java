@@ -3,16 +3,39 @@ package com.fizzed.nats.core;
 import io.nats.client.Message;
 import io.nats.client.impl.Headers;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class NatsReliableMessage {
 
     private final Message message;
+    private final NatsReliableStreamPullSubscriber subscriber;
+    // lazily decoded (a message is typically consumed by a single thread, so a benign race is fine here)
+    private byte[] data;
+    private String string;
+    private Object value;
+    private NatsCodec<?> valueCodec;
+    // set by the subscriber if in progress heartbeats are enabled
+    private volatile NatsInProgressTimer.Heartbeat heartbeat;
+    // set once an ack is sent via ackAsync(), which nats.java knows nothing about (it only tracks its own acks)
+    private final AtomicBoolean ackedAsync;
 
     public NatsReliableMessage(Message message) {
+        this(message, null);
+    }
+
+    public NatsReliableMessage(Message message, NatsReliableStreamPullSubscriber subscriber) {
         this.message = message;
+        this.subscriber = subscriber;
+        this.ackedAsync = new AtomicBoolean();
     }
 
     public Message unwrap() {
@@ -20,26 +43,146 @@ public class NatsReliableMessage {
     }
 
     /**
-     * Gets a UTF-8 encoded string of the data
+     * Gets a UTF-8 encoded string of the data. The string is decoded on the first call and then cached, so
+     * repeated calls do not decode (or allocate) again.
      * @return
      */
     public String getString() {
-        return new String(this.message.getData(), StandardCharsets.UTF_8);
+        String s = this.string;
+        if (s == null) {
+            final byte[] data = this.getData();
+            s = data != null ? new String(data, StandardCharsets.UTF_8) : "";
+            this.string = s;
+        }
+        return s;
     }
 
     public Headers getHeaders() {
         return this.message.getHeaders();
     }
 
+    /**
+     * Gets the raw data of the message. The array is NOT a copy, so it must not be modified. If the publisher
+     * compressed the payload, it is decompressed on the first call and then cached.
+     * @return
+     * @throws UncheckedIOException if the payload was compressed but is corrupt (or inflates beyond the max size)
+     */
     public byte[] getData() {
-        return this.message.getData();
+        byte[] d = this.data;
+        if (d == null) {
+            d = this.message.getData();
+            if (d != null && NatsCompression.isCompressed(this.message)) {
+                try {
+                    d = NatsCompression.inflate(d, this.getMaxInflatedSize());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            this.data = d;
+        }
+        return d;
+    }
+
+    /**
+     * Gets the size of the data of the message in bytes.
+     * @return
+     */
+    public int getDataLength() {
+        final byte[] data = this.getData();
+        return data != null ? data.length : 0;
+    }
+
+    /**
+     * Gets a read-only view of the data without copying it, e.g. for parsers that can work directly on bytes.
+     * @return
+     */
+    public ByteBuffer getByteBuffer() {
+        final byte[] data = this.getData();
+        return ByteBuffer.wrap(data != null ? data : new byte[0]).asReadOnlyBuffer();
+    }
+
+    /**
+     * Gets a stream over the data without copying it, e.g. so large JSON payloads can be parsed directly from the
+     * bytes rather than via an intermediate string.
+     * @return
+     */
+    public InputStream getInputStream() {
+        final byte[] data = this.getData();
+        return new ByteArrayInputStream(data != null ? data : new byte[0]);
+    }
+
+    /**
+     * Gets whether this is a reference message to a large payload stored in an object store (e.g. published via
+     * NatsReliableStreamPublisher.publishStream()), in which case its payload must be read via openStream().
+     * @return true if this is a claim check
+     */
+    public boolean isClaimCheck() {
+        return NatsClaimCheck.isClaimCheck(this.message);
+    }
+
+    /**
+     * Opens the large payload this reference message points to, using the claim check of the subscriber that received
+     * it. Chunks are fetched from the nats server as the stream is read, so the payload is never held in memory all
+     * at once. Messages that are not claim checks are simply streamed from their data.
+     * @return the payload
+     * @throws IOException if the payload could not be read
+     * @throws NatsUnrecoverableException if the claim check is not active
+     * @throws IllegalStateException if the subscriber has no claim check
+     */
+    public InputStream openStream() throws IOException, NatsUnrecoverableException {
+        if (!this.isClaimCheck()) {
+            return this.getInputStream();
+        }
+        final NatsClaimCheck claimCheck = this.subscriber != null ? this.subscriber.getClaimCheck() : null;
+        if (claimCheck == null) {
+            throw new IllegalStateException("No claim check set on the subscriber (did you forget to call .setClaimCheck() ?)");
+        }
+        return claimCheck.open(this.message);
     }
 
     public String getSubject() {
         return this.message.getSubject();
     }
 
+    /**
+     * Gets the value of the message decoded using the codec of the subscriber that received it. The value is decoded
+     * on the first call and then cached.
+     * @return the decoded value
+     * @throws IOException if the payload could not be decoded
+     * @throws IllegalStateException if the subscriber has no codec
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getValue() throws IOException {
+        final NatsCodec<?> codec = this.subscriber != null ? this.subscriber.getCodec() : null;
+        if (codec == null) {
+            throw new IllegalStateException("No codec set on the subscriber (did you forget to call .setCodec() ?)");
+        }
+        return this.getValue((NatsCodec<T>)codec);
+    }
+
+    /**
+     * Gets the value of the message decoded using the codec. The value is decoded on the first call and then cached
+     * (for as long as the same codec is used).
+     * @param codec the codec to decode with
+     * @return the decoded value
+     * @throws IOException if the payload could not be decoded
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getValue(NatsCodec<T> codec) throws IOException {
+        if (this.valueCodec != codec) {
+            this.value = codec.decode(this.getData());
+            this.valueCodec = codec;
+        }
+        return (T)this.value;
+    }
+
     public void ack() throws NatsUnrecoverableException, InterruptedException {
+        this.stopInProgress();
+        if (this.ackedAsync.get()) {
+            return;
+        }
+        final NatsMetrics metrics = this.getMetrics();
+        final long start = metrics != null ? System.nanoTime() : 0L;
         boolean success = false;
         try {
             message.ack();
@@ -47,12 +190,20 @@ public class NatsReliableMessage {
         } catch (IllegalStateException e) {
             // nats.java uses this to represent a lot of various problems, from subscriptions being inactive, etc.
             // in general, we will classify any of these as "unrecoverable" to help the client know to restart everything
-            throw new NatsUnrecoverableException(e.getMessage(), e);
+            throw this.recordException(metrics, new NatsUnrecoverableException(e.getMessage(), e));
         } catch (IllegalMonitorStateException e) {
             // nats.java v2.20.0 - v2.20.4 tries to release a lock it never had if its interrupted during a fetch(), it can be
             // safely ignored in this version
         }
 
+        if (success && metrics != null) {
+            metrics.recordAck(System.nanoTime() - start);
+        }
+
+        if (success) {
+            this.completed();
+        }
+
         if (!success) {
             if (Thread.interrupted()) {  // test and clear it
                 // otherwise, throw an interrupt exception
@@ -62,19 +213,36 @@ public class NatsReliableMessage {
     }
 
     public void ackSync(Duration timeout) throws TimeoutException, NatsUnrecoverableException, InterruptedException {
+        this.stopInProgress();
+        if (this.ackedAsync.get()) {
+            return;
+        }
+        final NatsMetrics metrics = this.getMetrics();
+        final long start = metrics != null ? System.nanoTime() : 0L;
         boolean success = false;
         try {
             message.ackSync(timeout);
             success = true;
+        } catch (TimeoutException e) {
+            // the ack may or may not have been received by the nats server, so the message may be redelivered
+            throw this.recordException(metrics, e);
         } catch (IllegalStateException e) {
             // nats.java uses this to represent a lot of various problems, from subscriptions being inactive, etc.
             // in general, we will classify any of these as "unrecoverable" to help the client know to restart everything
-            throw new NatsUnrecoverableException(e.getMessage(), e);
+            throw this.recordException(metrics, new NatsUnrecoverableException(e.getMessage(), e));
         } catch (IllegalMonitorStateException e) {
             // nats.java v2.20.0 - v2.20.4 tries to release a lock it never had if its interrupted during a fetch(), it can be
             // safely ignored in this version
         }
 
+        if (success && metrics != null) {
+            metrics.recordAckSync(System.nanoTime() - start);
+        }
+
+        if (success) {
+            this.completed();
+        }
+
         if (!success) {
             if (Thread.interrupted()) {  // test and clear it
                 // otherwise, throw an interrupt exception
@@ -83,4 +251,140 @@ public class NatsReliableMessage {
         }
     }
 
+    /**
+     * Acks the message and returns a future that completes once the nats server has confirmed the ack. Unlike
+     * ackSync() the calling thread does not wait for the round trip, so many acks can be pipelined. The ack is sent
+     * via the tracker assigned by the subscriber, or the default shared tracker if none was assigned. Just like the
+     * other acks, any later ack, nak or term of this message is ignored (unless the ack fails, so it can be retried).
+     * @return a future that completes once the ack is confirmed, or fails with a TimeoutException or
+     *      NatsUnrecoverableException
+     * @throws InterruptedException if interrupted while waiting for room in the ack pipeline
+     */
+    public CompletableFuture<Void> ackAsync() throws InterruptedException {
+        this.stopInProgress();
+        if (!this.ackedAsync.compareAndSet(false, true)) {
+            // already acked (or its ack is in flight)
+            return CompletableFuture.completedFuture(null);
+        }
+        final NatsAckTracker ackTracker = this.subscriber != null ? this.subscriber.getAckTracker() : null;
+        final NatsAckTracker tracker = ackTracker != null ? ackTracker : NatsAckTracker.getDefault();
+        final NatsMetrics metrics = this.getMetrics();
+
+        // the round trip of a confirmed ack is recorded the same as an ackSync()
+        final long start = metrics != null ? System.nanoTime() : 0L;
+        final CompletableFuture<Void> future;
+        try {
+            future = tracker.ack(this.message);
+        } catch (InterruptedException e) {
+            this.ackedAsync.set(false);
+            throw e;
+        }
+        future.whenComplete((v, t) -> {
+            if (t == null) {
+                if (metrics != null) {
+                    metrics.recordAckSync(System.nanoTime() - start);
+                }
+                this.completed();
+            } else {
+                // the same as a failed ackSync(), the message can still be acked (or nak'ed) again
+                this.ackedAsync.set(false);
+                if (metrics != null) {
+                    metrics.recordException(t);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Negatively acks the message, so it is redelivered right away (e.g. to another consumer).
+     */
+    public void nak() throws NatsUnrecoverableException, InterruptedException {
+        this.stopInProgress();
+        this.send(this.message::nak);
+    }
+
+    /**
+     * Negatively acks the message, so it is redelivered after the delay.
+     * @param delay the delay before it is redelivered
+     */
+    public void nakWithDelay(Duration delay) throws NatsUnrecoverableException, InterruptedException {
+        this.stopInProgress();
+        this.send(() -> this.message.nakWithDelay(delay));
+    }
+
+    /**
+     * Terminates the message, so it is never redelivered regardless of the max deliveries of the consumer.
+     */
+    public void term() throws NatsUnrecoverableException, InterruptedException {
+        this.stopInProgress();
+        this.send(this.message::term);
+    }
+
+    /**
+     * Tells the nats server the message is still being processed, which resets its ack wait. If the subscriber has an
+     * in progress timer, this is already done automatically.
+     */
+    public void inProgress() throws NatsUnrecoverableException, InterruptedException {
+        this.send(this.message::inProgress);
+    }
+
+    void startInProgress(NatsInProgressTimer timer, Duration interval) {
+        this.heartbeat = timer.track(this, interval);
+    }
+
+    private void stopInProgress() {
+        final NatsInProgressTimer.Heartbeat heartbeat = this.heartbeat;
+        if (heartbeat != null) {
+            this.heartbeat = null;
+            heartbeat.cancel();
+        }
+    }
+
+    private void send(Runnable action) throws NatsUnrecoverableException, InterruptedException {
+        if (this.ackedAsync.get()) {
+            // nats.java ignores these once a message was acked, but it doesn't know about an ackAsync()
+            return;
+        }
+        try {
+            action.run();
+        } catch (IllegalStateException e) {
+            // nats.java uses this to represent a lot of various problems, from subscriptions being inactive, etc.
+            // in general, we will classify any of these as "unrecoverable" to help the client know to restart everything
+            throw this.recordException(this.getMetrics(), new NatsUnrecoverableException(e.getMessage(), e));
+        } catch (IllegalMonitorStateException e) {
+            // nats.java v2.20.0 - v2.20.4 tries to release a lock it never had if its interrupted during a fetch(), it can be
+            // safely ignored in this version
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    private NatsMetrics getMetrics() {
+        return this.subscriber != null ? this.subscriber.getMetrics() : null;
+    }
+
+    private int getMaxInflatedSize() {
+        return this.subscriber != null ? this.subscriber.getMaxInflatedSize() : NatsCompression.DEFAULT_MAX_INFLATED_SIZE;
+    }
+
+    private NatsRedeliveryDedup getRedeliveryDedup() {
+        return this.subscriber != null ? this.subscriber.getRedeliveryDedup() : null;
+    }
+
+    private void completed() {
+        final NatsRedeliveryDedup redeliveryDedup = this.getRedeliveryDedup();
+        if (redeliveryDedup != null && this.message.isJetStream()) {
+            redeliveryDedup.add(this.message.metaData().streamSequence());
+        }
+    }
+
+    private <T extends Exception> T recordException(NatsMetrics metrics, T e) {
+        if (metrics != null) {
+            metrics.recordException(e);
+        }
+        return e;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+package com.fizzed.nats.core;
+
+/**
+ * Handles a message that was dispatched to a worker thread. The handler is responsible for acking the message once
+ * it has been successfully processed. If the handler throws an exception, the message will not be acked and will be
+ * redelivered by the nats server once its ack wait expires.
+ */
+@FunctionalInterface
+public interface NatsReliableMessageHandler {
+
+    void handle(NatsReliableMessage message) throws Exception;
+
+}
@@ -0,0 +1,345 @@
+package com.fizzed.nats.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Owns a single pull subscriber and fans its messages out to a pool of worker threads. By default, messages are
+ * processed in parallel in any order. If an ordering key is set, messages with the same key are always processed
+ * by the same worker (and thus serialized), while messages with different keys are processed in parallel.
+ */
+public class NatsReliableStreamDispatcher {
+    static private final Logger log = LoggerFactory.getLogger(NatsReliableStreamDispatcher.class);
+
+    private final NatsReliableStreamPullSubscriber subscriber;
+    private NatsReliableMessageHandler handler;
+    private Function<NatsReliableMessage, String> orderingKey;
+    private int workers;
+    private int queueSize;
+    private int batchSize;
+    private Duration pollTime;
+    private Duration recoveryDelay;
+    private boolean virtualThreads;
+    private volatile boolean running;
+    private volatile boolean workersRunning;
+    private Thread dispatcherThread;
+    private List<Thread> workerThreads;
+    private List<BlockingQueue<NatsReliableMessage>> queues;
+
+    public NatsReliableStreamDispatcher(NatsReliableStreamPullSubscriber subscriber) {
+        this.subscriber = subscriber;
+        this.workers = Runtime.getRuntime().availableProcessors();
+        this.queueSize = 16;
+        this.batchSize = 10;
+        this.pollTime = Duration.ofSeconds(30);
+        this.recoveryDelay = Duration.ofSeconds(5);
+    }
+
+    /**
+     * Orders messages by their subject, so messages on the same subject are processed serially.
+     * @return the ordering key function
+     */
+    static public Function<NatsReliableMessage, String> bySubject() {
+        return NatsReliableMessage::getSubject;
+    }
+
+    /**
+     * Orders messages by the first value of a header, so messages with the same header value are processed serially.
+     * Messages missing the header are processed in any order.
+     * @param key the header key
+     * @return the ordering key function
+     */
+    static public Function<NatsReliableMessage, String> byHeader(String key) {
+        return message -> message.getHeaders() != null ? message.getHeaders().getFirst(key) : null;
+    }
+
+    public NatsReliableStreamPullSubscriber getSubscriber() {
+        return subscriber;
+    }
+
+    public NatsReliableMessageHandler getHandler() {
+        return handler;
+    }
+
+    public NatsReliableStreamDispatcher setHandler(NatsReliableMessageHandler handler) {
+        this.handler = handler;
+        return this;
+    }
+
+    public Function<NatsReliableMessage, String> getOrderingKey() {
+        return orderingKey;
+    }
+
+    /**
+     * Sets the function used to determine the ordering key of a message. Messages with the same key are always
+     * dispatched to the same worker. A null function (the default) means messages are processed in any order.
+     * @param orderingKey the ordering key function or null for unordered processing
+     * @return this dispatcher
+     */
+    public NatsReliableStreamDispatcher setOrderingKey(Function<NatsReliableMessage, String> orderingKey) {
+        this.orderingKey = orderingKey;
+        return this;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public NatsReliableStreamDispatcher setWorkers(int workers) {
+        this.workers = workers;
+        return this;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Sets the max number of fetched messages that may wait to be processed (per worker if ordered). Once full, the
+     * dispatcher stops fetching until the workers catch up.
+     * @param queueSize the max number of messages waiting to be processed
+     * @return this dispatcher
+     */
+    public NatsReliableStreamDispatcher setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public NatsReliableStreamDispatcher setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public Duration getPollTime() {
+        return pollTime;
+    }
+
+    public NatsReliableStreamDispatcher setPollTime(Duration pollTime) {
+        this.pollTime = pollTime;
+        return this;
+    }
+
+    public Duration getRecoveryDelay() {
+        return recoveryDelay;
+    }
+
+    /**
+     * Sets how long the dispatcher waits after a recoverable or unrecoverable exception before it tries again.
+     * @param recoveryDelay the delay before trying again
+     * @return this dispatcher
+     */
+    public NatsReliableStreamDispatcher setRecoveryDelay(Duration recoveryDelay) {
+        this.recoveryDelay = recoveryDelay;
+        return this;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Sets whether the dispatcher and worker threads should be virtual threads (on Java 21+). With virtual threads
+     * it is cheap to use thousands of workers, e.g. one per ordering key. On older runtimes platform threads are
+     * always used.
+     * @param virtualThreads true to prefer virtual threads
+     * @return this dispatcher
+     */
+    public NatsReliableStreamDispatcher setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    synchronized public NatsReliableStreamDispatcher start() throws NatsUnrecoverableException {
+        if (this.running) {
+            throw new NatsUnrecoverableException("Dispatcher already running", null);
+        }
+
+        if (this.handler == null) {
+            throw new NatsUnrecoverableException("Dispatcher has no handler (did you forget to call .setHandler() ?)", null);
+        }
+
+        if (this.workers < 1) {
+            throw new IllegalArgumentException("Workers must be >= 1");
+        }
+
+        // unordered processing shares a single queue across all workers, so a slow message never blocks others
+        final int queueCount = this.orderingKey != null ? this.workers : 1;
+        this.queues = new ArrayList<>(queueCount);
+        for (int i = 0; i < queueCount; i++) {
+            this.queues.add(new ArrayBlockingQueue<>(this.queueSize));
+        }
+
+        this.running = true;
+        this.workersRunning = true;
+
+        final String name = this.subscriber.getDurable();
+
+        this.workerThreads = new ArrayList<>(this.workers);
+        for (int i = 0; i < this.workers; i++) {
+            final BlockingQueue<NatsReliableMessage> queue = this.queues.get(i % queueCount);
+            final Thread workerThread = NatsThreads.newThread("nats-worker-" + name + "-" + i, this.virtualThreads, () -> this.runWorker(queue));
+            workerThread.start();
+            this.workerThreads.add(workerThread);
+        }
+
+        this.dispatcherThread = NatsThreads.newThread("nats-dispatcher-" + name, this.virtualThreads, this::runDispatcher);
+        this.dispatcherThread.start();
+
+        return this;
+    }
+
+    /**
+     * Stops fetching messages, waits for any already fetched messages to be processed by the workers, and then
+     * stops the workers and the subscriber.
+     * @throws InterruptedException if interrupted while waiting for the workers to finish
+     */
+    synchronized public void stop() throws InterruptedException {
+        if (!this.running) {
+            return;
+        }
+
+        // stop fetching first, so that anything already fetched can be processed
+        this.running = false;
+        this.dispatcherThread.interrupt();
+        this.dispatcherThread.join();
+        this.dispatcherThread = null;
+
+        // workers exit once their queues are drained
+        this.workersRunning = false;
+        for (Thread workerThread : this.workerThreads) {
+            workerThread.join();
+        }
+        this.workerThreads = null;
+        this.queues = null;
+    }
+
+    private BlockingQueue<NatsReliableMessage> queueFor(NatsReliableMessage message, int index) {
+        if (this.queues.size() == 1) {
+            return this.queues.get(0);
+        }
+
+        final String key = this.orderingKey.apply(message);
+        if (key == null) {
+            // no key means no ordering is required
+            return this.queues.get(index % this.queues.size());
+        }
+
+        return this.queues.get((key.hashCode() & 0x7fffffff) % this.queues.size());
+    }
+
+    private void dispatch(List<NatsReliableMessage> messages) throws InterruptedException {
+        boolean interrupted = false;
+        int index = 0;
+        for (NatsReliableMessage message : messages) {
+            final BlockingQueue<NatsReliableMessage> queue = this.queueFor(message, index++);
+            // NOTE: fetched messages are always handed off to the workers, even if we are interrupted, since the
+            // workers keep processing until the dispatcher has fully exited
+            while (true) {
+                try {
+                    queue.put(message);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        if (interrupted) {
+            throw new InterruptedException();
+        }
+    }
+
+    private void runDispatcher() {
+        log.debug("Nats dispatcher started");
+
+        while (this.running) {
+            try {
+                this.subscriber.start();
+
+                while (this.running) {
+                    try {
+                        final List<NatsReliableMessage> messages = this.subscriber.nextMessages(this.batchSize, this.pollTime);
+
+                        if (messages != null) {
+                            this.dispatch(messages);
+                        }
+                    } catch (NatsRecoverableException e) {
+                        log.warn("Nats dispatcher recoverable exception (will wait a bit)", e);
+                        try {
+                            Thread.sleep(this.recoveryDelay.toMillis());
+                        } catch (InterruptedException ie) {
+                            this.strayInterrupt();
+                        }
+                    } catch (InterruptedException e) {
+                        this.strayInterrupt();
+                    }
+                }
+            } catch (NatsUnrecoverableException e) {
+                log.warn("Nats dispatcher unrecoverable exception (will stop subscriber and wait a bit)", e);
+                this.subscriber.stop();
+                try {
+                    Thread.sleep(this.recoveryDelay.toMillis());
+                } catch (InterruptedException ie) {
+                    this.strayInterrupt();
+                }
+            }
+        }
+
+        // NOTE: with prefetching, the subscriber nak's anything still buffered, so its redelivered (not lost)
+        this.subscriber.stop();
+
+        log.debug("Nats dispatcher stopped");
+    }
+
+    private void strayInterrupt() {
+        // only stop() should stop the dispatcher, a stray interrupt (e.g. from the connection listener of the
+        // subscriber) while we're still running is ignored
+        if (this.running) {
+            log.debug("Nats dispatcher interrupted while still running (will ignore)");
+        }
+    }
+
+    private void runWorker(BlockingQueue<NatsReliableMessage> queue) {
+        // NOTE: workers are never interrupted by stop(), they exit once their queue is drained, and a worker that
+        // exits early would leave its queue to fill up and every key hashed to it would block forever
+        while (this.workersRunning || !queue.isEmpty()) {
+            final NatsReliableMessage message;
+            try {
+                message = queue.poll(250L, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                log.warn("Nats worker interrupted (will ignore)");
+                continue;
+            }
+
+            if (message != null) {
+                try {
+                    this.handler.handle(message);
+                } catch (InterruptedException e) {
+                    log.warn("Nats worker handler interrupted (message will be redelivered once its ack wait expires)", e);
+                } catch (Throwable t) {
+                    // even an Error (e.g. an AssertionError or StackOverflowError) must not kill the worker
+                    log.error("Nats worker handler failed (message will be redelivered once its ack wait expires)", t);
+                }
+                // clear any interrupt the handler left behind, otherwise our next poll would fail right away
+                Thread.interrupted();
+            }
+        }
+    }
+
+}
@@ -2,14 +2,41 @@ package com.fizzed.nats.core;
 
 import io.nats.client.*;
 import io.nats.client.api.PublishAck;
+import io.nats.client.impl.Headers;
+import io.nats.client.impl.NatsMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Supplier;
 
+import static io.nats.client.support.NatsJetStreamConstants.MSG_ID_HDR;
+
 public class NatsReliableStreamPublisher {
+    static private final Logger log = LoggerFactory.getLogger(NatsReliableStreamPublisher.class);
 
     private final Supplier<Connection> connectionSupplier;
+    private int maxInFlight;
+    private NatsMetrics metrics;
+    private NatsCodec<?> codec;
+    private int compressionThreshold;
+    private NatsClaimCheck claimCheck;
+    private Duration publishTimeout;
+    private boolean idempotent;
+    private int maxRetries;
+    private NatsBackoff retryBackoff;
     private JetStream js;
+    private Semaphore inFlightPermits;
 
     public NatsReliableStreamPublisher(Connection connection) {
         this(() -> connection);
@@ -17,6 +44,154 @@ public class NatsReliableStreamPublisher {
 
     public NatsReliableStreamPublisher(Supplier<Connection> connectionSupplier) {
         this.connectionSupplier = connectionSupplier;
+        this.maxInFlight = 1000;
+        this.maxRetries = 5;
+        this.retryBackoff = new NatsBackoff(Duration.ofMillis(50L), Duration.ofSeconds(2));
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Sets the max number of publishAsync() calls that may be awaiting their ack from the nats server. Once the
+     * window is full, publishAsync() will block until an earlier publish is acked. Must be set before start() is
+     * called.
+     * @param maxInFlight the max number of async publishes awaiting an ack
+     * @return this publisher
+     */
+    public NatsReliableStreamPublisher setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * Gets the number of async publishes currently awaiting their ack from the nats server.
+     * @return the number of publishes in flight
+     */
+    public int getInFlight() {
+        final Semaphore permits = this.inFlightPermits;
+        return permits != null ? this.maxInFlight - permits.availablePermits() : 0;
+    }
+
+    public NatsMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics this publisher will record to. A null value (the default) disables metrics entirely.
+     * @param metrics the metrics or null to disable
+     * @return this publisher
+     */
+    public NatsReliableStreamPublisher setMetrics(NatsMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public NatsCodec<?> getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets the codec used by publishValue() and publishValueAsync() to encode values into messages.
+     * @param codec the codec or null if only raw messages will be published
+     * @return this publisher
+     */
+    public NatsReliableStreamPublisher setCodec(NatsCodec<?> codec) {
+        this.codec = codec;
+        return this;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Enables compression of payloads that are at least this many bytes. Compressed payloads are marked with a
+     * header and are transparently decompressed by NatsReliableMessage. Payloads that do not get smaller are sent
+     * as-is. A value of zero (the default) disables compression.
+     * @param compressionThreshold the min payload size in bytes to compress or zero to disable
+     * @return this publisher
+     */
+    public NatsReliableStreamPublisher setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+        return this;
+    }
+
+    public NatsClaimCheck getClaimCheck() {
+        return claimCheck;
+    }
+
+    /**
+     * Sets the (started) claim check used by publishStream() to store large payloads in an object store.
+     * @param claimCheck the claim check or null if large payloads will not be published
+     * @return this publisher
+     */
+    public NatsReliableStreamPublisher setClaimCheck(NatsClaimCheck claimCheck) {
+        this.claimCheck = claimCheck;
+        return this;
+    }
+
+    public Duration getPublishTimeout() {
+        return publishTimeout;
+    }
+
+    /**
+     * Sets how long a publish waits for its ack from the nats server before failing with a recoverable exception
+     * (default is the nats.java default of 2 seconds). An aggressive timeout lowers tail latency, but is really only
+     * safe when combined with setIdempotent(true). Must be set before start() is called.
+     * @param publishTimeout the timeout or null for the default
+     * @return this publisher
+     */
+    public NatsReliableStreamPublisher setPublishTimeout(Duration publishTimeout) {
+        this.publishTimeout = publishTimeout;
+        return this;
+    }
+
+    public boolean isIdempotent() {
+        return idempotent;
+    }
+
+    /**
+     * Enables idempotent publishing. Every message is stamped with a Nats-Msg-Id header (unless it already has one,
+     * e.g. a business key, which is even better since it survives a restart of the publisher) and recoverable
+     * failures are automatically retried with the same id. The stream discards any retry that was actually persisted
+     * the first time, as long as the retry happens within its duplicate window (2 minutes by default). Retries are
+     * done by publish() and publishAll(), while publishAsync() only stamps the id.
+     * @param idempotent true to stamp ids and retry recoverable failures
+     * @return this publisher
+     */
+    public NatsReliableStreamPublisher setIdempotent(boolean idempotent) {
+        this.idempotent = idempotent;
+        return this;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Sets the max number of times a recoverable failure is retried in idempotent mode (default is 5).
+     * @param maxRetries the max number of retries
+     * @return this publisher
+     */
+    public NatsReliableStreamPublisher setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    public NatsBackoff getRetryBackoff() {
+        return retryBackoff;
+    }
+
+    /**
+     * Sets the backoff between retries in idempotent mode (default is 50ms to 2 secs).
+     * @param retryBackoff the backoff
+     * @return this publisher
+     */
+    public NatsReliableStreamPublisher setRetryBackoff(NatsBackoff retryBackoff) {
+        this.retryBackoff = retryBackoff;
+        return this;
     }
 
     public NatsReliableStreamPublisher start() throws NatsUnrecoverableException {
@@ -27,15 +202,68 @@ public class NatsReliableStreamPublisher {
         final Connection connection = connectionSupplier.get();
 
         try {
-            this.js = connection.jetStream();
+            if (this.publishTimeout != null) {
+                this.js = connection.jetStream(JetStreamOptions.builder()
+                    .requestTimeout(this.publishTimeout)
+                    .build());
+            } else {
+                this.js = connection.jetStream();
+            }
         } catch (IOException e) {
             throw new NatsUnrecoverableException(e.getMessage(), e);
         }
 
+        this.inFlightPermits = new Semaphore(this.maxInFlight);
+
         return this;
     }
 
     public PublishAck publish(Message message) throws NatsUnrecoverableException, NatsRecoverableException, InterruptedException {
+        if (!this.idempotent) {
+            return this.publishOnce(message);
+        }
+
+        // the same id must be used for every attempt, so the stream can discard any that were already persisted
+        final Message stamped = stampMessageId(message);
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                final PublishAck ack = this.publishOnce(stamped);
+                if (ack.isDuplicate()) {
+                    log.debug("Nats publish of msg id {} was a duplicate (an earlier attempt must have succeeded)",
+                        stamped.getHeaders().getFirst(MSG_ID_HDR));
+                }
+                return ack;
+            } catch (NatsRecoverableException e) {
+                if (attempt >= this.maxRetries) {
+                    throw e;
+                }
+                final long delayMillis = this.retryBackoff.getDelayMillis(attempt);
+                log.debug("Nats publish of msg id {} failed (will retry in {} ms): {}",
+                    stamped.getHeaders().getFirst(MSG_ID_HDR), delayMillis, e.getMessage());
+                Thread.sleep(delayMillis);
+            }
+        }
+    }
+
+    private PublishAck publishOnce(Message message) throws NatsUnrecoverableException, NatsRecoverableException, InterruptedException {
+        final NatsMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return this.doPublish(message);
+        }
+
+        final long start = System.nanoTime();
+        try {
+            final PublishAck ack = this.doPublish(message);
+            metrics.recordPublish(System.nanoTime() - start);
+            return ack;
+        } catch (NatsRecoverableException | NatsUnrecoverableException e) {
+            metrics.recordException(e);
+            throw e;
+        }
+    }
+
+    private PublishAck doPublish(Message message) throws NatsUnrecoverableException, NatsRecoverableException, InterruptedException {
         // in nats.java < v2.20.0, they used synchronized() blocks which are not interruptible, so we will do that
         // check here before we try to do a public()
         if (Thread.interrupted()) {
@@ -46,6 +274,10 @@ public class NatsReliableStreamPublisher {
             throw new NatsUnrecoverableException("Publisher is not active (did you forget to call .start() ?)", null);
         }
 
+        if (this.compressionThreshold > 0) {
+            message = NatsCompression.compress(message, this.compressionThreshold);
+        }
+
         try {
             return this.js.publish(message);
         } catch (JetStreamApiException | IOException e) {
@@ -64,4 +296,261 @@ public class NatsReliableStreamPublisher {
         }
     }
 
+    /**
+     * Encodes the value using the codec of this publisher and publishes it.
+     * @param subject the subject to publish to
+     * @param value the value to encode
+     * @return the ack from the nats server
+     */
+    public PublishAck publishValue(String subject, Object value) throws NatsUnrecoverableException, NatsRecoverableException, InterruptedException {
+        return this.publish(this.encodeMessage(subject, value));
+    }
+
+    /**
+     * Encodes the value using the codec of this publisher and publishes it via publishAsync().
+     * @param subject the subject to publish to
+     * @param value the value to encode
+     * @return a future that completes with the ack from the nats server
+     */
+    public CompletableFuture<PublishAck> publishValueAsync(String subject, Object value) throws NatsUnrecoverableException, InterruptedException {
+        return this.publishAsync(this.encodeMessage(subject, value));
+    }
+
+    /**
+     * Streams a (large) payload into the object store of the claim check of this publisher and then publishes a small
+     * reference message in its place. The payload is never held in memory all at once. If the reference message fails
+     * to publish, the stored object is left behind, since the publish may have actually succeeded (e.g. a timeout).
+     * @param subject the subject to publish to
+     * @param input the payload (which is NOT closed)
+     * @return the ack from the nats server for the reference message
+     */
+    public PublishAck publishStream(String subject, InputStream input) throws NatsUnrecoverableException, NatsRecoverableException, InterruptedException {
+        final NatsClaimCheck claimCheck = this.claimCheck;
+        if (claimCheck == null) {
+            throw new NatsUnrecoverableException("No claim check set on the publisher (did you forget to call .setClaimCheck() ?)", null);
+        }
+
+        // NOTE: the reference message is only headers, so there is nothing for compression to do
+        return this.publish(claimCheck.store(subject, input));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Message encodeMessage(String subject, Object value) throws NatsUnrecoverableException {
+        final NatsCodec<Object> codec = (NatsCodec<Object>)this.codec;
+        if (codec == null) {
+            throw new NatsUnrecoverableException("No codec set on the publisher (did you forget to call .setCodec() ?)", null);
+        }
+
+        final byte[] data;
+        try {
+            data = codec.encode(value);
+        } catch (IOException | RuntimeException e) {
+            // the value itself can't be encoded, retrying won't help
+            throw new NatsUnrecoverableException(e.getMessage(), e);
+        }
+
+        return NatsMessage.builder()
+            .subject(subject)
+            .data(data)
+            .build();
+    }
+
+    /**
+     * Publishes a message without waiting for its ack from the nats server, so many publishes can be pipelined. If
+     * the in flight window is full, this method blocks until an earlier publish is acked. The returned future fails
+     * with a NatsRecoverableException or NatsUnrecoverableException using the same classification as publish().
+     * @param message the message to publish
+     * @return a future that completes with the ack from the nats server
+     * @throws NatsUnrecoverableException if the publisher is not active or the publish could not be sent
+     * @throws InterruptedException if interrupted while waiting for room in the in flight window
+     */
+    public CompletableFuture<PublishAck> publishAsync(Message message) throws NatsUnrecoverableException, InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+
+        if (this.js == null) {
+            throw new NatsUnrecoverableException("Publisher is not active (did you forget to call .start() ?)", null);
+        }
+
+        if (this.idempotent) {
+            message = stampMessageId(message);
+        }
+
+        if (this.compressionThreshold > 0) {
+            message = NatsCompression.compress(message, this.compressionThreshold);
+        }
+
+        final Semaphore permits = this.inFlightPermits;
+        final NatsMetrics metrics = this.metrics;
+
+        // backpressure: wait for room in the window
+        permits.acquire();
+
+        // NOTE: publish latency is measured from when the message is sent, not including any backpressure wait
+        final long start = metrics != null ? System.nanoTime() : 0L;
+
+        final CompletableFuture<PublishAck> future;
+        try {
+            future = this.js.publishAsync(message);
+        } catch (IllegalStateException e) {
+            // nats.java uses this to represent a lot of various problems, from the connection being closed, etc.
+            // in general, we will classify any of these as "unrecoverable" to help the client know to restart everything
+            permits.release();
+            final NatsUnrecoverableException ue = new NatsUnrecoverableException(e.getMessage(), e);
+            if (metrics != null) {
+                metrics.recordException(ue);
+            }
+            throw ue;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        final CompletableFuture<PublishAck> result = new CompletableFuture<>();
+
+        future.whenComplete((ack, t) -> {
+            permits.release();
+            if (t != null) {
+                final Exception e = toPublishException(t);
+                if (metrics != null) {
+                    metrics.recordException(e);
+                }
+                result.completeExceptionally(e);
+            } else {
+                if (metrics != null) {
+                    metrics.recordPublish(System.nanoTime() - start);
+                }
+                result.complete(ack);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Publishes all the messages pipelined (subject to the in flight window) and then waits for all of their acks.
+     * A result is returned for every message, in the same order, so that any partial failures can be retried
+     * selectively (e.g. only those that are recoverable). In idempotent mode, any recoverable failures are retried
+     * here first.
+     * @param messages the messages to publish
+     * @return the result of each publish in the same order as the messages
+     * @throws InterruptedException if interrupted while publishing or waiting for acks
+     */
+    public List<NatsPublishResult> publishAll(List<Message> messages) throws InterruptedException {
+        if (!this.idempotent) {
+            return this.publishAllOnce(messages);
+        }
+
+        // stamped up front, so the results (and any retries of them) carry the same ids
+        final List<Message> stamped = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            stamped.add(stampMessageId(message));
+        }
+
+        final List<NatsPublishResult> results = this.publishAllOnce(stamped);
+
+        for (int attempt = 0; attempt < this.maxRetries; attempt++) {
+            final List<Integer> retryIndexes = new ArrayList<>();
+            final List<Message> retryMessages = new ArrayList<>();
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i).isRecoverable()) {
+                    retryIndexes.add(i);
+                    retryMessages.add(results.get(i).getMessage());
+                }
+            }
+
+            if (retryMessages.isEmpty()) {
+                break;
+            }
+
+            final long delayMillis = this.retryBackoff.getDelayMillis(attempt);
+            log.debug("Nats publish of {} msgs failed (will retry in {} ms)", retryMessages.size(), delayMillis);
+            Thread.sleep(delayMillis);
+
+            final List<NatsPublishResult> retryResults = this.publishAllOnce(retryMessages);
+            for (int i = 0; i < retryIndexes.size(); i++) {
+                results.set(retryIndexes.get(i), retryResults.get(i));
+            }
+        }
+
+        return results;
+    }
+
+    private List<NatsPublishResult> publishAllOnce(List<Message> messages) throws InterruptedException {
+        final List<CompletableFuture<PublishAck>> futures = new ArrayList<>(messages.size());
+        final List<Exception> sendExceptions = new ArrayList<>(messages.size());
+
+        for (Message message : messages) {
+            try {
+                futures.add(this.publishAsync(message));
+                sendExceptions.add(null);
+            } catch (NatsUnrecoverableException e) {
+                futures.add(null);
+                sendExceptions.add(e);
+            } catch (IllegalArgumentException e) {
+                // nats.java rejects e.g. a payload larger than the max payload of the server, only this message failed
+                futures.add(null);
+                sendExceptions.add(new NatsUnrecoverableException(e.getMessage(), e));
+            }
+        }
+
+        final List<NatsPublishResult> results = new ArrayList<>(messages.size());
+
+        for (int i = 0; i < messages.size(); i++) {
+            final CompletableFuture<PublishAck> future = futures.get(i);
+            if (future == null) {
+                results.add(new NatsPublishResult(messages.get(i), null, sendExceptions.get(i)));
+                continue;
+            }
+            try {
+                results.add(new NatsPublishResult(messages.get(i), future.get(), null));
+            } catch (ExecutionException e) {
+                // publishAsync() futures always fail with an already classified exception
+                results.add(new NatsPublishResult(messages.get(i), null, toPublishException(e)));
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Stamps the message with a unique Nats-Msg-Id header, unless it already has one.
+     * @param message the message
+     * @return the original message if it already had an id, otherwise a copy of it with an id
+     */
+    static Message stampMessageId(Message message) {
+        final Headers existing = message.getHeaders();
+        if (existing != null && existing.getFirst(MSG_ID_HDR) != null) {
+            return message;
+        }
+
+        final Headers headers = existing != null ? new Headers(existing) : new Headers();
+        headers.put(MSG_ID_HDR, NUID.nextGlobal());
+
+        return NatsMessage.builder()
+            .subject(message.getSubject())
+            .replyTo(message.getReplyTo())
+            .headers(headers)
+            .data(message.getData())
+            .build();
+    }
+
+    static Exception toPublishException(Throwable t) {
+        if ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        if (t instanceof NatsRecoverableException || t instanceof NatsUnrecoverableException) {
+            return (Exception)t;
+        }
+        if (t instanceof JetStreamApiException || t instanceof IOException || t instanceof TimeoutException
+                || t instanceof CancellationException) {
+            // timeouts, connection problems, no responders, etc. are worth retrying
+            return new NatsRecoverableException(t.getMessage(), t);
+        }
+        // nats.java uses IllegalStateException to represent a lot of various problems, from subscriptions being
+        // inactive, etc. and in general, we will classify any of these (and anything else) as "unrecoverable"
+        return new NatsUnrecoverableException(t.getMessage(), t);
+    }
+
 }
\ No newline at end of file
@@ -4,8 +4,15 @@ import io.nats.client.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
@@ -24,7 +31,8 @@ public class NatsReliableStreamPullSubscriber {
                     case DISCONNECTED:
                     case LAME_DUCK:
                         log.warn("Connection to nats {}", type.name());
-                        unhealthyRef.set("Nats connection problem: " + type.name());
+                        setState(type == Events.CLOSED ? NatsSubscriberState.CLOSED
+                            : type == Events.DISCONNECTED ? NatsSubscriberState.DISCONNECTED : NatsSubscriberState.LAME_DUCK);
                         // anyone waiting for the fetch() will have problems until we're connected again, also the fetch()
                         // will never return until its timeout expires, plus in our testing it also won't work!
                         final Thread fetchingThread = threadRef.getAndSet(null);
@@ -32,26 +40,79 @@ public class NatsReliableStreamPullSubscriber {
                             // tell the fetching thread to give up!
                             fetchingThread.interrupt();
                         }
+                        if (type == Events.CLOSED) {
+                            // wake up anyone waiting to recover, since a closed connection never will
+                            synchronized (healthLock) {
+                                healthLock.notifyAll();
+                            }
+                        }
                         break;
                     case CONNECTED:
                     case RECONNECTED:
                         // are we back to being healthy again?
                         log.debug("Connection to nats {}", type.name());
-                        unhealthyRef.set(null);
+                        setState(NatsSubscriberState.CONNECTED);
+                        // wake up anyone waiting to recover
+                        synchronized (healthLock) {
+                            healthLock.notifyAll();
+                        }
                         break;
                 }
             }
         }
     }
 
+    static private class StateHolder {
+        private final NatsSubscriberState state;
+        private final long timestamp;
+        // when the subscriber first became unhealthy (carried across e.g. DISCONNECTED -> CLOSED), used to measure recovery
+        private final long unhealthyNanos;
+
+        public StateHolder(NatsSubscriberState state, long unhealthyNanos) {
+            this.state = state;
+            this.timestamp = System.currentTimeMillis();
+            this.unhealthyNanos = unhealthyNanos;
+        }
+    }
+
     private final Supplier<Connection> connectionSupplier;
     private Connection connection;
     private final InternalConnectionListener connectionListener;
     private final AtomicReference<Thread> threadRef = new AtomicReference<>();
-    private final AtomicReference<String> unhealthyRef = new AtomicReference<>();
+    private final AtomicReference<StateHolder> stateRef = new AtomicReference<>(new StateHolder(NatsSubscriberState.STOPPED, 0L));
+    private final List<NatsSubscriberStateListener> stateListeners = new CopyOnWriteArrayList<>();
+    private final Object healthLock = new Object();
     private String subject;
     private String durable;
-    private JetStreamSubscription subscription;
+    private long fetchMaxBytes;
+    private Duration fetchExpiresIn;
+    private Duration batchLinger;
+    private int prefetchSize;
+    private Duration prefetchPollTime;
+    private NatsAckTracker ackTracker;
+    private NatsMetrics metrics;
+    private NatsCodec<?> codec;
+    private NatsClaimCheck claimCheck;
+    private boolean autoRecovery;
+    private NatsAdaptiveFetch adaptiveFetch;
+    private NatsRedeliveryDedup redeliveryDedup;
+    private int maxInflatedSize;
+    private NatsInProgressTimer inProgressTimer;
+    private Duration inProgressInterval;
+    // the interval actually used, resolved from the consumer on start() if not set
+    private volatile Duration resolvedInProgressInterval;
+    // when the last batch was handed to the caller (to measure its processing time for adaptive fetching)
+    private long lastReturnNanos;
+    private int lastReturnCount;
+    private NatsBackoff recoveryBackoff;
+    private boolean virtualThreads;
+    private volatile JetStreamSubscription subscription;
+    // prefetching (only used if prefetchSize > 0)
+    private final LinkedBlockingQueue<NatsReliableMessage> prefetchBuffer = new LinkedBlockingQueue<>();
+    private final AtomicReference<NatsUnrecoverableException> prefetchFailureRef = new AtomicReference<>();
+    private volatile Semaphore prefetchPermits;
+    private volatile boolean prefetching;
+    private Thread prefetchThread;
 
     public NatsReliableStreamPullSubscriber(Connection connection) {
         this(() -> connection);
@@ -60,6 +121,13 @@ public class NatsReliableStreamPullSubscriber {
     public NatsReliableStreamPullSubscriber(Supplier<Connection> connectionSupplier) {
         this.connectionSupplier = connectionSupplier;
         this.connectionListener = new InternalConnectionListener();
+        this.fetchMaxBytes = 0L;
+        this.fetchExpiresIn = null;
+        this.batchLinger = Duration.ofMillis(100L);
+        this.prefetchSize = 0;
+        this.prefetchPollTime = Duration.ofSeconds(30);
+        this.recoveryBackoff = new NatsBackoff(Duration.ofMillis(50L), Duration.ofSeconds(5));
+        this.maxInflatedSize = NatsCompression.DEFAULT_MAX_INFLATED_SIZE;
     }
 
     public String getSubject() {
@@ -80,6 +148,280 @@ public class NatsReliableStreamPullSubscriber {
         return this;
     }
 
+    public long getFetchMaxBytes() {
+        return fetchMaxBytes;
+    }
+
+    /**
+     * Sets the maximum number of bytes the server will deliver per batch fetch in nextMessages(). A value of zero (the
+     * default) means no byte limit is applied and only the batch size is used.
+     * @param fetchMaxBytes the max bytes per batch fetch or zero for unlimited
+     * @return this subscriber
+     */
+    public NatsReliableStreamPullSubscriber setFetchMaxBytes(long fetchMaxBytes) {
+        this.fetchMaxBytes = fetchMaxBytes;
+        return this;
+    }
+
+    public Duration getFetchExpiresIn() {
+        return fetchExpiresIn;
+    }
+
+    /**
+     * Sets how long each individual pull request lives on the server during a batch fetch in nextMessages(). If the
+     * poll time is longer than this value, the pull request will be re-issued until the poll time expires. A value of
+     * null (the default) means the pull request will live as long as the poll time.
+     * @param fetchExpiresIn the expiration of each pull request or null to use the poll time
+     * @return this subscriber
+     */
+    public NatsReliableStreamPullSubscriber setFetchExpiresIn(Duration fetchExpiresIn) {
+        this.fetchExpiresIn = fetchExpiresIn;
+        return this;
+    }
+
+    public Duration getBatchLinger() {
+        return batchLinger;
+    }
+
+    /**
+     * Sets how long nextMessages() will wait for the remainder of a batch once at least 1 message has been received.
+     * This allows partial batches to be returned promptly rather than waiting for the entire poll time to expire.
+     * @param batchLinger the max time to wait between messages of a partial batch
+     * @return this subscriber
+     */
+    public NatsReliableStreamPullSubscriber setBatchLinger(Duration batchLinger) {
+        this.batchLinger = batchLinger;
+        return this;
+    }
+
+    public int getPrefetchSize() {
+        return prefetchSize;
+    }
+
+    /**
+     * Enables prefetching mode if the size is > 0. A background thread will keep a local buffer of up to this many
+     * messages topped up, so that nextMessage() and nextMessages() become a local dequeue rather than a round trip
+     * to the nats server. Any messages remaining in the buffer when stop() is called are nak'ed, so the nats server
+     * redelivers them right away (rather than them waiting out their ack wait, or being kept in progress by a
+     * subscriber that is no longer consuming). Must be set before start() is called.
+     * @param prefetchSize the max number of messages to buffer locally or zero to disable prefetching
+     * @return this subscriber
+     */
+    public NatsReliableStreamPullSubscriber setPrefetchSize(int prefetchSize) {
+        this.prefetchSize = prefetchSize;
+        return this;
+    }
+
+    public Duration getPrefetchPollTime() {
+        return prefetchPollTime;
+    }
+
+    /**
+     * Sets the poll time the background prefetching thread uses for each of its fetches.
+     * @param prefetchPollTime the poll time of each background fetch
+     * @return this subscriber
+     */
+    public NatsReliableStreamPullSubscriber setPrefetchPollTime(Duration prefetchPollTime) {
+        this.prefetchPollTime = prefetchPollTime;
+        return this;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Sets whether the background prefetching thread should be a virtual thread (on Java 21+). On older runtimes a
+     * platform thread is always used.
+     * @param virtualThreads true to prefer a virtual thread
+     * @return this subscriber
+     */
+    public NatsReliableStreamPullSubscriber setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * Gets the number of messages currently buffered locally by prefetching.
+     * @return the number of buffered messages
+     */
+    public int getPrefetchedCount() {
+        return this.prefetchBuffer.size();
+    }
+
+    public NatsAckTracker getAckTracker() {
+        return ackTracker;
+    }
+
+    /**
+     * Sets the tracker used by NatsReliableMessage.ackAsync() for messages received by this subscriber. A null value
+     * (the default) means the default shared tracker will be used.
+     * @param ackTracker the ack tracker or null to use the default shared tracker
+     * @return this subscriber
+     */
+    public NatsReliableStreamPullSubscriber setAckTracker(NatsAckTracker ackTracker) {
+        this.ackTracker = ackTracker;
+        return this;
+    }
+
+    public NatsMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics this subscriber (and the messages it receives) will record to. A null value (the default)
+     * disables metrics entirely.
+     * @param metrics the metrics or null to disable
+     * @return this subscriber
+     */
+    public NatsReliableStreamPullSubscriber setMetrics(NatsMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public NatsCodec<?> getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets the codec used by NatsReliableMessage.getValue() to decode messages received by this subscriber.
+     * @param codec the codec or null if messages will only be consumed as raw data
+     * @return this subscriber
+     */
+    public NatsReliableStreamPullSubscriber setCodec(NatsCodec<?> codec) {
+        this.codec = codec;
+        return this;
+    }
+
+    public NatsClaimCheck getClaimCheck() {
+        return claimCheck;
+    }
+
+    /**
+     * Sets the (started) claim check used by NatsReliableMessage.openStream() to read large payloads that were
+     * published via NatsReliableStreamPublisher.publishStream().
+     * @param claimCheck the claim check or null if large payloads will not be consumed
+     * @return this subscriber
+     */
+    public NatsReliableStreamPullSubscriber setClaimCheck(NatsClaimCheck claimCheck) {
+        this.claimCheck = claimCheck;
+        return this;
+    }
+
+    public NatsAdaptiveFetch getAdaptiveFetch() {
+        return adaptiveFetch;
+    }
+
+    /**
+     * Enables adaptive fetching, where the batch size and pull request expiration are tuned automatically based on the
+     * fill ratio of recent fetches and how long the caller takes to process each message (measured between calls to
+     * nextMessages()). The batch size passed to nextMessages() becomes an upper limit. Not used with prefetching, where
+     * the prefetch size already limits how many messages are claimed.
+     * @param adaptiveFetch the adaptive fetch or null to disable
+     * @return this subscriber
+     */
+    public NatsReliableStreamPullSubscriber setAdaptiveFetch(NatsAdaptiveFetch adaptiveFetch) {
+        this.adaptiveFetch = adaptiveFetch;
+        return this;
+    }
+
+    public NatsRedeliveryDedup getRedeliveryDedup() {
+        return redeliveryDedup;
+    }
+
+    /**
+     * Enables dropping redeliveries of messages that were already completed (e.g. the ack was lost to a timeout or
+     * reconnect). The stream sequence of every message acked via NatsReliableMessage is remembered, and any
+     * redelivery of one of them is acked again and never returned from nextMessages() (so a handler never sees it).
+     * A fetch made up entirely of duplicates returns null, the same as a poll that received nothing.
+     * @param redeliveryDedup the dedup or null to disable
+     * @return this subscriber
+     */
+    public NatsReliableStreamPullSubscriber setRedeliveryDedup(NatsRedeliveryDedup redeliveryDedup) {
+        this.redeliveryDedup = redeliveryDedup;
+        return this;
+    }
+
+    public int getMaxInflatedSize() {
+        return maxInflatedSize;
+    }
+
+    /**
+     * Sets the max size a compressed payload may decompress to (default is 64MB), after which reading the data of the
+     * message fails rather than risk running out of memory.
+     * @param maxInflatedSize the max size in bytes
+     * @return this subscriber
+     */
+    public NatsReliableStreamPullSubscriber setMaxInflatedSize(int maxInflatedSize) {
+        this.maxInflatedSize = maxInflatedSize;
+        return this;
+    }
+
+    public NatsInProgressTimer getInProgressTimer() {
+        return inProgressTimer;
+    }
+
+    /**
+     * Enables automatic in progress heartbeats for every message received by this subscriber, until its acked, nak'ed
+     * or term'ed via NatsReliableMessage. This keeps long running handlers from exceeding the ack wait of the consumer
+     * (which would trigger a redelivery while the message is still being processed). Use NatsInProgressTimer.getDefault()
+     * to share a single timer (and thread) across all subscribers. Must be set before start() is called.
+     * @param inProgressTimer the timer or null to disable
+     * @return this subscriber
+     */
+    public NatsReliableStreamPullSubscriber setInProgressTimer(NatsInProgressTimer inProgressTimer) {
+        this.inProgressTimer = inProgressTimer;
+        return this;
+    }
+
+    public Duration getInProgressInterval() {
+        return inProgressInterval;
+    }
+
+    /**
+     * Sets how often in progress heartbeats are sent. The default is null, which means half of the ack wait of the
+     * consumer (as reported by the nats server on start()).
+     * @param inProgressInterval the interval or null to use half of the ack wait
+     * @return this subscriber
+     */
+    public NatsReliableStreamPullSubscriber setInProgressInterval(Duration inProgressInterval) {
+        this.inProgressInterval = inProgressInterval;
+        return this;
+    }
+
+    public boolean isAutoRecovery() {
+        return autoRecovery;
+    }
+
+    /**
+     * Enables auto recovery mode. Rather than throwing a NatsRecoverableException (or a NatsUnrecoverableException if
+     * the subscription became inactive) from nextMessages(), the subscription is re-established internally as soon as
+     * the connection is reconnected, and retried with the recovery backoff if that fails. Callers simply see no
+     * messages until the subscriber has recovered. If the nats server rejects the subscription (e.g. the stream was
+     * deleted) a NatsUnrecoverableException is still thrown. The time each recovery took is recorded in the metrics.
+     * @param autoRecovery true to enable auto recovery
+     * @return this subscriber
+     */
+    public NatsReliableStreamPullSubscriber setAutoRecovery(boolean autoRecovery) {
+        this.autoRecovery = autoRecovery;
+        return this;
+    }
+
+    public NatsBackoff getRecoveryBackoff() {
+        return recoveryBackoff;
+    }
+
+    /**
+     * Sets the backoff between attempts to re-establish the subscription in auto recovery mode (default is 50ms
+     * doubling up to 5s, with jitter).
+     * @param recoveryBackoff the backoff
+     * @return this subscriber
+     */
+    public NatsReliableStreamPullSubscriber setRecoveryBackoff(NatsBackoff recoveryBackoff) {
+        this.recoveryBackoff = recoveryBackoff;
+        return this;
+    }
+
     synchronized public NatsReliableStreamPullSubscriber start() throws NatsUnrecoverableException {
         if (this.subscription != null) {
             throw new NatsUnrecoverableException("Subscription already active", null);
@@ -88,11 +430,12 @@ public class NatsReliableStreamPullSubscriber {
         try {
             this.connection = this.connectionSupplier.get();
 
-            final JetStream js = this.connection.jetStream();
+            this.subscription = this.subscribe();
+            this.setState(this.connection.getStatus() == Connection.Status.CONNECTED ? NatsSubscriberState.CONNECTED : NatsSubscriberState.DISCONNECTED);
 
-            this.subscription = js.subscribe(this.subject, PullSubscribeOptions.builder()
-                .durable(this.durable)
-                .build());
+            if (this.inProgressTimer != null) {
+                this.resolvedInProgressInterval = this.resolveInProgressInterval();
+            }
 
             // we do this last so that if the subscription fails, we don't add too many connection listeners
             this.connection.addConnectionListener(this.connectionListener);
@@ -100,10 +443,62 @@ public class NatsReliableStreamPullSubscriber {
             throw new NatsUnrecoverableException(e.getMessage(), e);
         }
 
+        if (this.prefetchSize > 0) {
+            this.startPrefetching();
+        }
+
         return this;
     }
 
+    private JetStreamSubscription subscribe() throws IOException, JetStreamApiException {
+        final JetStream js = this.connection.jetStream();
+
+        return js.subscribe(this.subject, PullSubscribeOptions.builder()
+            .durable(this.durable)
+            .build());
+    }
+
+    private Duration resolveInProgressInterval() {
+        if (this.inProgressInterval != null) {
+            return this.inProgressInterval;
+        }
+        Duration ackWait = null;
+        try {
+            ackWait = this.subscription.getConsumerInfo().getConsumerConfiguration().getAckWait();
+        } catch (Exception e) {
+            log.warn("Nats consumer info failed (will assume the default ack wait)", e);
+        }
+        if (ackWait == null || ackWait.isZero() || ackWait.isNegative()) {
+            // the default ack wait of the nats server
+            ackWait = Duration.ofSeconds(30);
+        }
+        return ackWait.dividedBy(2);
+    }
+
+    synchronized private void resubscribe() throws IOException, JetStreamApiException, NatsUnrecoverableException {
+        final JetStreamSubscription oldSubscription = this.subscription;
+        if (oldSubscription == null) {
+            throw new NatsUnrecoverableException("Subscription is not active (was stop() called?)", null);
+        }
+
+        try {
+            oldSubscription.unsubscribe();
+        } catch (Exception e) {
+            // the old subscription is very likely already dead, which is why we're here
+            log.debug("Nats unsubscribe of old subscription failed (will ignore since we are resubscribing)", e);
+        }
+
+        this.subscription = this.subscribe();
+        this.setState(NatsSubscriberState.CONNECTED);
+    }
+
     synchronized public void stop() {
+        // stop prefetching first, so any fetch in progress lands in the buffer before we unsubscribe
+        this.stopPrefetching();
+
+        // nobody will process what's left in the buffer, so hand it back to the nats server to be redelivered
+        this.nakPrefetched();
+
         // is the subscription active?
         if (this.subscription != null) {
             // try to officially unsubscribe
@@ -121,21 +516,75 @@ public class NatsReliableStreamPullSubscriber {
             this.subscription = null;
             this.connection = null;
         }
+
+        this.setState(NatsSubscriberState.STOPPED);
+    }
+
+    public NatsSubscriberState getState() {
+        return this.stateRef.get().state;
+    }
+
+    /**
+     * Gets when the subscriber entered its current state.
+     * @return the timestamp of the current state
+     */
+    public Instant getStateTimestamp() {
+        return Instant.ofEpochMilli(this.stateRef.get().timestamp);
+    }
+
+    public NatsReliableStreamPullSubscriber addStateListener(NatsSubscriberStateListener listener) {
+        this.stateListeners.add(listener);
+        return this;
+    }
+
+    public NatsReliableStreamPullSubscriber removeStateListener(NatsSubscriberStateListener listener) {
+        this.stateListeners.remove(listener);
+        return this;
+    }
+
+    private void setState(NatsSubscriberState state) {
+        this.compareAndSetState(null, state);
+    }
+
+    private void compareAndSetState(NatsSubscriberState expectedState, NatsSubscriberState state) {
+        StateHolder previous;
+        while (true) {
+            previous = this.stateRef.get();
+            if (previous.state == state || (expectedState != null && previous.state != expectedState)) {
+                return;
+            }
+            final long unhealthyNanos = !state.isUnhealthy() ? 0L
+                : previous.state.isUnhealthy() ? previous.unhealthyNanos : System.nanoTime();
+            if (this.stateRef.compareAndSet(previous, new StateHolder(state, unhealthyNanos))) {
+                break;
+            }
+        }
+
+        for (NatsSubscriberStateListener listener : this.stateListeners) {
+            try {
+                listener.stateChanged(this, previous.state, state);
+            } catch (Exception e) {
+                log.warn("Nats subscriber state listener failed (will ignore)", e);
+            }
+        }
     }
 
     public boolean isHealthy() {
-        return this.unhealthyRef.get() == null;
+        return !this.getState().isUnhealthy();
     }
 
     protected void checkHealth() throws NatsUnrecoverableException, NatsRecoverableException {
-        String unhealthyMessage = this.unhealthyRef.get();
-        if (unhealthyMessage != null) {
+        final NatsSubscriberState state = this.stateRef.get().state;
+        if (state.isUnhealthy()) {
             // connection problems are recoverable
-            if (unhealthyMessage.contains("connection problem")) {
-                throw new NatsRecoverableException(unhealthyMessage, null);
+            if (state.isConnectionProblem()) {
+                throw new NatsRecoverableException("Nats connection problem: " + state, null);
+            }
+            if (state == NatsSubscriberState.CLOSED) {
+                throw new NatsUnrecoverableException("Nats connection closed (it will never be reconnected)", null);
             }
             // otherwise, we'll assume its something more serious
-            throw new NatsUnrecoverableException(unhealthyMessage, null);
+            throw new NatsUnrecoverableException("Nats subscription problem: " + state, null);
         }
     }
 
@@ -146,6 +595,141 @@ public class NatsReliableStreamPullSubscriber {
     }
 
     public List<NatsReliableMessage> nextMessages(int batchSize, Duration pollTime) throws NatsRecoverableException, NatsUnrecoverableException, InterruptedException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be >= 1");
+        }
+
+        try {
+            if (this.prefetchSize > 0) {
+                return this.nextPrefetchedMessages(batchSize, pollTime);
+            }
+
+            final NatsAdaptiveFetch adaptiveFetch = this.adaptiveFetch;
+            if (adaptiveFetch == null) {
+                return this.fetchRecovering(batchSize, pollTime);
+            }
+
+            // the time since we last returned messages is how long the caller took to process them
+            if (this.lastReturnCount > 0) {
+                adaptiveFetch.recordProcessing(this.lastReturnCount, System.nanoTime() - this.lastReturnNanos);
+                this.lastReturnCount = 0;
+            }
+
+            final List<NatsReliableMessage> messages = this.fetchRecovering(Math.min(batchSize, adaptiveFetch.getBatchSize()), pollTime);
+
+            if (messages != null) {
+                this.lastReturnNanos = System.nanoTime();
+                this.lastReturnCount = messages.size();
+            }
+
+            return messages;
+        } catch (NatsRecoverableException | NatsUnrecoverableException e) {
+            final NatsMetrics metrics = this.metrics;
+            if (metrics != null) {
+                metrics.recordException(e);
+            }
+            throw e;
+        }
+    }
+
+    private List<NatsReliableMessage> fetchRecovering(int batchSize, Duration pollTime) throws NatsRecoverableException, NatsUnrecoverableException, InterruptedException {
+        if (!this.autoRecovery) {
+            return this.fetchMessages(batchSize, pollTime);
+        }
+
+        final long deadline = System.nanoTime() + pollTime.toNanos();
+        long remainingNanos = pollTime.toNanos();
+        int attempt = 0;
+
+        while (true) {
+            try {
+                return this.fetchMessages(batchSize, Duration.ofNanos(remainingNanos));
+            } catch (NatsRecoverableException | NatsUnrecoverableException e) {
+                // only connection problems and subscriptions that nats.java decided are inactive can be recovered from,
+                // and never once we've been stopped
+                if (this.subscription == null || (e instanceof NatsUnrecoverableException && !(e.getCause() instanceof IllegalStateException))) {
+                    throw e;
+                }
+                this.checkConnectionClosed(e);
+                log.debug("Nats subscriber failed (will auto recover)", e);
+                if (!this.recover(deadline, attempt++)) {
+                    // poll time expired while recovering
+                    return null;
+                }
+            }
+
+            remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos < 1000000L) {
+                return null;
+            }
+        }
+    }
+
+    private boolean recover(long deadline, int attempt) throws NatsUnrecoverableException, InterruptedException {
+        // if we keep failing right after recovering, don't spin
+        if (attempt > 0 && !this.sleepUntil(deadline, this.recoveryBackoff.getDelayMillis(attempt - 1))) {
+            return false;
+        }
+
+        final long unhealthyNanos = this.stateRef.get().unhealthyNanos;
+        final long failedAt = unhealthyNanos != 0L ? unhealthyNanos : System.nanoTime();
+
+        while (true) {
+            // wait for the connection to be re-established (we're woken up as soon as its RECONNECTED or CLOSED)
+            synchronized (this.healthLock) {
+                while (this.getState().isConnectionProblem()) {
+                    final long remainingNanos = deadline - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this.healthLock, remainingNanos);
+                }
+            }
+
+            this.checkConnectionClosed(null);
+
+            try {
+                this.resubscribe();
+
+                final long downNanos = System.nanoTime() - failedAt;
+                final NatsMetrics metrics = this.metrics;
+                if (metrics != null) {
+                    metrics.recordRecovery(downNanos);
+                }
+                log.info("Nats subscriber recovered (after {} ms)", TimeUnit.NANOSECONDS.toMillis(downNanos));
+                return true;
+            } catch (JetStreamApiException e) {
+                // the nats server rejected the subscription (e.g. the stream was deleted), retrying won't help
+                throw new NatsUnrecoverableException(e.getMessage(), e);
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Nats resubscribe failed (will backoff and try again)", e);
+            }
+
+            if (!this.sleepUntil(deadline, this.recoveryBackoff.getDelayMillis(attempt++))) {
+                return false;
+            }
+        }
+    }
+
+    private void checkConnectionClosed(Exception cause) throws NatsUnrecoverableException {
+        // nats.java never reopens a closed connection, so waiting on it to recover would simply wait forever
+        final Connection connection = this.connection;
+        if (this.getState() == NatsSubscriberState.CLOSED
+                || (connection != null && connection.getStatus() == Connection.Status.CLOSED)) {
+            throw new NatsUnrecoverableException("Nats connection closed (it will never be reconnected)", cause);
+        }
+    }
+
+    private boolean sleepUntil(long deadline, long delayMillis) throws InterruptedException {
+        final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remainingMillis <= 0) {
+            return false;
+        }
+        Thread.sleep(Math.min(delayMillis, remainingMillis));
+        return true;
+    }
+
+    private List<NatsReliableMessage> fetchMessages(int batchSize, Duration pollTime) throws NatsRecoverableException, NatsUnrecoverableException, InterruptedException {
         // in nats.java < v2.20.0, they used synchronized() blocks which are not interruptible, so we will do that
         // check here before we try to do a fetch()
         if (Thread.interrupted()) {
@@ -163,15 +747,26 @@ public class NatsReliableStreamPullSubscriber {
         // e.g. the server was shutdown, so the subscription became invalid
         List<Message> messages;
 
+        final NatsMetrics metrics = this.metrics;
+        final long start = metrics != null ? System.nanoTime() : 0L;
+
         // we need to store the thread that will be waiting (only 1 at a time)
         if (!this.threadRef.compareAndSet(null, Thread.currentThread())) {
             throw new NatsUnrecoverableException("Only 1 thread at a time is allowed to fetch per instance of " + this.getClass().getCanonicalName(), null);
         }
         try {
-            messages = this.subscription.fetch(1, pollTime);
+            if (batchSize == 1 && this.fetchMaxBytes <= 0 && this.getPullExpiresInNanos() <= 0L) {
+                // nats.java fetch() is optimal for a single message, since there is no partial batch to wait on (but
+                // its pull request always expires w/ the poll time, so its only used if nothing else was configured)
+                messages = this.subscription.fetch(1, pollTime);
+            } else {
+                messages = this.fetchBatch(batchSize, pollTime);
+            }
         } catch (IllegalStateException e) {
             // nats.java uses this to represent a lot of various problems, from subscriptions being inactive, etc.
             // in general, we will classify any of these as "unrecoverable" to help the client know to restart everything
+            // (unless we already know its because the connection is down, which is more specific)
+            this.compareAndSetState(NatsSubscriberState.CONNECTED, NatsSubscriberState.SUBSCRIPTION_INACTIVE);
             throw new NatsUnrecoverableException(e.getMessage(), e);
         } catch (IllegalMonitorStateException e) {
             // nats.java v2.20.0 - v2.20.4 tries to release a lock it never had if its interrupted during a fetch(), it can be
@@ -182,6 +777,15 @@ public class NatsReliableStreamPullSubscriber {
             this.threadRef.set(null);
         }
 
+        if (metrics != null) {
+            metrics.recordFetch(batchSize, messages != null ? messages.size() : 0, System.nanoTime() - start);
+        }
+
+        final NatsAdaptiveFetch adaptiveFetch = this.adaptiveFetch;
+        if (adaptiveFetch != null && this.prefetchSize <= 0) {
+            adaptiveFetch.recordFetch(batchSize, messages != null ? messages.size() : 0);
+        }
+
         if (messages == null || messages.isEmpty()) {
             // NOTE: even if we were interrupted, if fetch() returned results / partial results, its important those
             // still have a chance to be processed (for graceful shutdown scenarios), so we'll ignore if an interrupt occurred
@@ -198,7 +802,290 @@ public class NatsReliableStreamPullSubscriber {
             return null;
         }
 
-        return toReliableMessageList(messages);
+        final NatsRedeliveryDedup redeliveryDedup = this.redeliveryDedup;
+        if (redeliveryDedup != null) {
+            messages = this.dropDuplicates(redeliveryDedup, messages);
+            if (messages.isEmpty()) {
+                return null;
+            }
+        }
+
+        final List<NatsReliableMessage> reliableMessages = toReliableMessageList(messages, this);
+
+        final NatsInProgressTimer inProgressTimer = this.inProgressTimer;
+        final Duration inProgressInterval = this.resolvedInProgressInterval;
+        if (inProgressTimer != null && inProgressInterval != null) {
+            // tracked as soon as they're received, since prefetched messages are also waiting on their ack wait
+            for (NatsReliableMessage message : reliableMessages) {
+                message.startInProgress(inProgressTimer, inProgressInterval);
+            }
+        }
+
+        return reliableMessages;
+    }
+
+    private List<Message> dropDuplicates(NatsRedeliveryDedup redeliveryDedup, List<Message> messages) {
+        List<Message> filtered = null;
+
+        for (int i = 0; i < messages.size(); i++) {
+            final Message message = messages.get(i);
+            // only a redelivery can be a duplicate, so first deliveries skip the lookup entirely
+            final boolean duplicate = message.isJetStream()
+                && message.metaData().deliveredCount() > 1
+                && redeliveryDedup.isDuplicate(message.metaData().streamSequence());
+
+            if (duplicate) {
+                log.debug("Nats redelivery of already completed stream seq {} (will ack it again and drop it)",
+                    message.metaData().streamSequence());
+                try {
+                    message.ack();
+                } catch (IllegalStateException | IllegalMonitorStateException e) {
+                    // if this ack is lost too, we'll simply see it again
+                    log.debug("Nats ack of duplicate failed (will ignore)", e);
+                }
+                if (filtered == null) {
+                    // copy what we've kept so far, the common case of no duplicates never allocates
+                    filtered = new ArrayList<>(messages.subList(0, i));
+                }
+            } else if (filtered != null) {
+                filtered.add(message);
+            }
+        }
+
+        return filtered != null ? filtered : messages;
+    }
+
+    // the expiration of each pull request, as configured or tuned by adaptive fetching (or zero to use the poll time)
+    private long getPullExpiresInNanos() {
+        final Duration fetchExpiresIn = this.fetchExpiresIn;
+        if (fetchExpiresIn != null && fetchExpiresIn.toNanos() > 0) {
+            return fetchExpiresIn.toNanos();
+        }
+        final NatsAdaptiveFetch adaptiveFetch = this.adaptiveFetch;
+        if (adaptiveFetch != null && this.prefetchSize <= 0) {
+            return adaptiveFetch.getExpiresIn().toNanos();
+        }
+        return 0L;
+    }
+
+    private List<Message> fetchBatch(int batchSize, Duration pollTime) {
+        final List<Message> messages = new ArrayList<>(batchSize);
+        final long lingerNanos = this.batchLinger != null ? this.batchLinger.toNanos() : 0L;
+        final long deadline = System.nanoTime() + pollTime.toNanos();
+        long remainingNanos = pollTime.toNanos();
+
+        // keep issuing pull requests until we receive something or the poll time expires
+        while (messages.isEmpty() && remainingNanos >= 1000000L) {
+            final long pullExpiresInNanos = this.getPullExpiresInNanos();
+            final long expiresInNanos = pullExpiresInNanos > 0L ? Math.min(remainingNanos, pullExpiresInNanos) : remainingNanos;
+
+            // no wait w/ an expiration tells the server to wait for at least 1 message, but then to immediately send
+            // whatever is available (up to the batch size / max bytes) rather than holding the request open
+            final PullRequestOptions.Builder pullOptions = PullRequestOptions.builder(batchSize)
+                .noWait()
+                .expiresIn(Duration.ofNanos(expiresInNanos));
+
+            if (this.fetchMaxBytes > 0) {
+                pullOptions.maxBytes(this.fetchMaxBytes);
+            }
+
+            this.subscription.pull(pullOptions.build());
+
+            final long pullDeadline = System.nanoTime() + expiresInNanos;
+            long pullRemainingNanos = expiresInNanos;
+
+            while (messages.size() < batchSize && pullRemainingNanos > 0) {
+                // once we have a partial batch, we only linger a short while for the rest of it
+                final long waitMillis = (messages.isEmpty() ? pullRemainingNanos : Math.min(pullRemainingNanos, lingerNanos)) / 1000000L;
+                if (waitMillis <= 0) {
+                    // NOTE: nats.java treats a zero timeout as "wait forever", which is definitely not what we want
+                    break;
+                }
+
+                final Message message;
+                try {
+                    message = this.subscription.nextMessage(Duration.ofMillis(waitMillis));
+                } catch (InterruptedException e) {
+                    // restore the interrupt so our caller can decide how to handle it, but still return whatever
+                    // we received so it has a chance to be processed (for graceful shutdown scenarios)
+                    Thread.currentThread().interrupt();
+                    return messages;
+                }
+
+                if (message == null) {
+                    break;
+                }
+
+                messages.add(message);
+
+                pullRemainingNanos = pullDeadline - System.nanoTime();
+            }
+
+            remainingNanos = deadline - System.nanoTime();
+        }
+
+        return messages;
+    }
+
+    //
+    // prefetching
+    //
+
+    private void startPrefetching() {
+        this.prefetchFailureRef.set(null);
+        // any messages still buffered from a previous start() count against the buffer size
+        this.prefetchPermits = new Semaphore(Math.max(0, this.prefetchSize - this.prefetchBuffer.size()));
+        this.prefetching = true;
+        this.prefetchThread = NatsThreads.newThread("nats-prefetcher-" + this.durable, this.virtualThreads, this::runPrefetcher);
+        this.prefetchThread.start();
+    }
+
+    private void stopPrefetching() {
+        if (this.prefetchThread != null) {
+            this.prefetching = false;
+            this.prefetchThread.interrupt();
+            try {
+                this.prefetchThread.join(5000L);
+            } catch (InterruptedException e) {
+                // restore the interrupt, we still want to finish stopping
+                Thread.currentThread().interrupt();
+            }
+            if (this.prefetchThread.isAlive()) {
+                log.warn("Nats prefetcher thread did not exit in time (will continue stopping anyway)");
+            }
+            this.prefetchThread = null;
+        }
+    }
+
+    private void runPrefetcher() {
+        log.debug("Nats prefetcher started");
+
+        final Semaphore permits = this.prefetchPermits;
+
+        while (this.prefetching) {
+            int requested = 0;
+            List<NatsReliableMessage> messages = null;
+            try {
+                // wait for room in the buffer, then claim as much room as we can for a single batch
+                permits.acquire();
+                requested = 1 + this.tryAcquirePermits(permits, this.prefetchSize - 1);
+
+                messages = this.fetchRecovering(requested, this.prefetchPollTime);
+            } catch (InterruptedException e) {
+                // we are either stopping or the connection listener interrupted us, either way the loop will decide
+            } catch (NatsRecoverableException e) {
+                log.debug("Nats prefetcher recoverable exception (will wait till healthy again)", e);
+                try {
+                    while (this.prefetching && this.getState().isConnectionProblem()) {
+                        Thread.sleep(250L);
+                    }
+                } catch (InterruptedException ie) {
+                    // we are stopping
+                }
+            } catch (NatsUnrecoverableException e) {
+                log.warn("Nats prefetcher unrecoverable exception (will exit and report to consumers)", e);
+                this.prefetchFailureRef.set(e);
+                this.prefetching = false;
+            } finally {
+                // NOTE: the messages MUST always land in the buffer, even if we are stopping, so stop() nak's them
+                final int received = messages != null ? messages.size() : 0;
+                if (received > 0) {
+                    this.prefetchBuffer.addAll(messages);
+                }
+                if (requested > received) {
+                    permits.release(requested - received);
+                }
+            }
+        }
+
+        log.debug("Nats prefetcher stopped");
+    }
+
+    private void nakPrefetched() {
+        final List<NatsReliableMessage> messages = new ArrayList<>(this.prefetchBuffer.size());
+        this.prefetchBuffer.drainTo(messages);
+
+        for (NatsReliableMessage message : messages) {
+            try {
+                // also stops its in progress heartbeats, even if the nak fails
+                message.nak();
+            } catch (InterruptedException e) {
+                // restore the interrupt, we still want to finish stopping
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.debug("Nats nak of prefetched message failed (it'll be redelivered once its ack wait expires)", e);
+            }
+        }
+
+        if (!messages.isEmpty()) {
+            log.debug("Nats subscriber nak'ed {} prefetched messages on stop", messages.size());
+        }
+    }
+
+    private int tryAcquirePermits(Semaphore permits, int max) {
+        int acquired = 0;
+        while (acquired < max && permits.tryAcquire()) {
+            acquired++;
+        }
+        return acquired;
+    }
+
+    private List<NatsReliableMessage> nextPrefetchedMessages(int batchSize, Duration pollTime) throws NatsRecoverableException, NatsUnrecoverableException, InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+
+        final List<NatsReliableMessage> messages = new ArrayList<>(Math.min(batchSize, this.prefetchSize));
+
+        // anything already buffered is returned immediately
+        if (this.drainPrefetched(messages, batchSize) > 0) {
+            return messages;
+        }
+
+        if (this.subscription == null) {
+            throw new NatsUnrecoverableException("Subscription is not active (did you forget to call .start() ?)", null);
+        }
+
+        final long deadline = System.nanoTime() + pollTime.toNanos();
+        long remainingNanos = pollTime.toNanos();
+
+        while (remainingNanos > 0) {
+            // verify we are healthy (unless the prefetcher will recover on its own) and the prefetcher is still working
+            if (!this.autoRecovery) {
+                this.checkHealth();
+            }
+            final NatsUnrecoverableException prefetchFailure = this.prefetchFailureRef.get();
+            if (prefetchFailure != null) {
+                throw new NatsUnrecoverableException(prefetchFailure.getMessage(), prefetchFailure);
+            }
+
+            // we wait in slices so that the health of the subscription and prefetcher is re-checked periodically
+            final NatsReliableMessage message = this.prefetchBuffer.poll(Math.min(remainingNanos, TimeUnit.SECONDS.toNanos(1)), TimeUnit.NANOSECONDS);
+            if (message != null) {
+                messages.add(message);
+                this.releasePrefetchPermits(1);
+                this.drainPrefetched(messages, batchSize - 1);
+                return messages;
+            }
+
+            remainingNanos = deadline - System.nanoTime();
+        }
+
+        // we'll normalize an empty list to a null
+        return null;
+    }
+
+    private int drainPrefetched(List<NatsReliableMessage> messages, int max) {
+        final int drained = max > 0 ? this.prefetchBuffer.drainTo(messages, max) : 0;
+        this.releasePrefetchPermits(drained);
+        return drained;
+    }
+
+    private void releasePrefetchPermits(int count) {
+        final Semaphore permits = this.prefetchPermits;
+        if (permits != null && count > 0) {
+            permits.release(count);
+        }
     }
 
 }
\ No newline at end of file
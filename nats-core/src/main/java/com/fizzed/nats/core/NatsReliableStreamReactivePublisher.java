@@ -0,0 +1,262 @@
+package com.fizzed.nats.core;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Adapts a pull subscriber into a Reactive Streams publisher. Downstream demand from request(n) translates directly
+ * into the batch size of each pull fetch (capped by the max batch size), so there is end-to-end backpressure without
+ * an intermediate queue. Only a single subscriber is supported. To use with java.util.concurrent.Flow, wrap this
+ * publisher with org.reactivestreams.FlowAdapters.toFlowPublisher().
+ *
+ * The pull subscriber is started when subscribed to, and stopped when the subscription is cancelled or fails.
+ * Recoverable exceptions are retried after the recovery delay, while unrecoverable exceptions are signaled via
+ * onError(). Messages are not acked by this publisher, that is the responsibility of the downstream subscriber.
+ */
+public class NatsReliableStreamReactivePublisher implements Publisher<NatsReliableMessage> {
+    static private final Logger log = LoggerFactory.getLogger(NatsReliableStreamReactivePublisher.class);
+
+    private final NatsReliableStreamPullSubscriber subscriber;
+    private final AtomicBoolean subscribed;
+    private int maxBatchSize;
+    private Duration pollTime;
+    private Duration recoveryDelay;
+    private boolean virtualThreads;
+
+    public NatsReliableStreamReactivePublisher(NatsReliableStreamPullSubscriber subscriber) {
+        this.subscriber = subscriber;
+        this.subscribed = new AtomicBoolean(false);
+        this.maxBatchSize = 256;
+        this.pollTime = Duration.ofSeconds(30);
+        this.recoveryDelay = Duration.ofSeconds(5);
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Sets the max batch size of a single pull fetch, regardless of how much demand is outstanding.
+     * @param maxBatchSize the max batch size
+     * @return this publisher
+     */
+    public NatsReliableStreamReactivePublisher setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    public Duration getPollTime() {
+        return pollTime;
+    }
+
+    public NatsReliableStreamReactivePublisher setPollTime(Duration pollTime) {
+        this.pollTime = pollTime;
+        return this;
+    }
+
+    public Duration getRecoveryDelay() {
+        return recoveryDelay;
+    }
+
+    public NatsReliableStreamReactivePublisher setRecoveryDelay(Duration recoveryDelay) {
+        this.recoveryDelay = recoveryDelay;
+        return this;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public NatsReliableStreamReactivePublisher setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super NatsReliableMessage> downstream) {
+        if (downstream == null) {
+            throw new NullPointerException("Subscriber cannot be null");
+        }
+
+        if (!this.subscribed.compareAndSet(false, true)) {
+            downstream.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                    // ignored
+                }
+                @Override
+                public void cancel() {
+                    // ignored
+                }
+            });
+            downstream.onError(new IllegalStateException("Only a single subscriber is supported"));
+            return;
+        }
+
+        final InternalSubscription subscription = new InternalSubscription(downstream);
+
+        downstream.onSubscribe(subscription);
+
+        subscription.start();
+    }
+
+    // implemented here so its not in the public API
+    private class InternalSubscription implements Subscription {
+
+        private final Subscriber<? super NatsReliableMessage> downstream;
+        private final AtomicLong demand;
+        private final Object lock;
+        private final AtomicBoolean terminated;
+        // an error raised by request() on another thread, only ever signaled downstream by the emitting thread
+        private final AtomicReference<Throwable> pendingError;
+        private volatile boolean cancelled;
+        private volatile Thread thread;
+
+        public InternalSubscription(Subscriber<? super NatsReliableMessage> downstream) {
+            this.downstream = downstream;
+            this.demand = new AtomicLong(0L);
+            this.lock = new Object();
+            this.terminated = new AtomicBoolean(false);
+            this.pendingError = new AtomicReference<>();
+        }
+
+        public void start() {
+            this.thread = NatsThreads.newThread("nats-reactive-" + subscriber.getDurable(), virtualThreads, this::run);
+            this.thread.start();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                // rule 3.9: non-positive requests must signal an IllegalArgumentException, but rule 1.3 requires signals
+                // to be serialized, and the emitting thread may be in onNext() right now, so its left for it to signal
+                if (this.pendingError.compareAndSet(null, new IllegalArgumentException("Request must be > 0 (rule 3.9)"))) {
+                    this.wakeup();
+                }
+                return;
+            }
+
+            // rule 3.17: demand is capped at Long.MAX_VALUE (which is treated as unbounded)
+            this.demand.getAndUpdate(current -> {
+                final long updated = current + n;
+                return updated < 0 ? Long.MAX_VALUE : updated;
+            });
+
+            synchronized (this.lock) {
+                this.lock.notifyAll();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+            this.wakeup();
+        }
+
+        private void wakeup() {
+            synchronized (this.lock) {
+                this.lock.notifyAll();
+            }
+
+            // the fetch may be waiting on the nats server, so we interrupt it (any partially fetched messages are not
+            // acked, and will be redelivered by the server)
+            final Thread t = this.thread;
+            if (t != null && t != Thread.currentThread()) {
+                t.interrupt();
+            }
+        }
+
+        private boolean isDone() {
+            return this.cancelled || this.pendingError.get() != null;
+        }
+
+        // only ever called by the emitting thread
+        private void fail(Throwable t) {
+            // rule 1.7: only a single terminal signal is allowed
+            if (!this.cancelled && this.terminated.compareAndSet(false, true)) {
+                this.cancelled = true;
+                this.downstream.onError(t);
+            }
+        }
+
+        private void awaitDemand() throws InterruptedException {
+            synchronized (this.lock) {
+                while (!this.isDone() && this.demand.get() == 0) {
+                    this.lock.wait();
+                }
+            }
+        }
+
+        private void run() {
+            try {
+                while (!this.cancelled) {
+                    try {
+                        subscriber.start();
+
+                        while (!this.cancelled) {
+                            try {
+                                this.awaitDemand();
+
+                                if (!this.isDone()) {
+                                    // downstream demand translates directly into the size of the pull fetch
+                                    final int batchSize = (int)Math.min(this.demand.get(), maxBatchSize);
+
+                                    final List<NatsReliableMessage> messages = subscriber.nextMessages(batchSize, pollTime);
+
+                                    if (messages != null) {
+                                        for (NatsReliableMessage message : messages) {
+                                            if (this.isDone()) {
+                                                break;
+                                            }
+                                            this.demand.getAndUpdate(current -> current == Long.MAX_VALUE ? current : current - 1);
+                                            this.downstream.onNext(message);
+                                        }
+                                    }
+                                }
+                            } catch (NatsRecoverableException e) {
+                                log.warn("Nats reactive publisher recoverable exception (will wait a bit)", e);
+                                try {
+                                    Thread.sleep(recoveryDelay.toMillis());
+                                } catch (InterruptedException ie) {
+                                    // woken up by cancel() or request(), or a stray interrupt, either way we loop
+                                }
+                            } catch (InterruptedException e) {
+                                // cancel() and request() interrupt us to deliver their signal, anything else is a stray
+                                // interrupt that must not fail an active subscription
+                                if (!this.isDone()) {
+                                    log.debug("Nats reactive publisher interrupted while still active (will ignore)");
+                                }
+                            }
+
+                            final Throwable error = this.pendingError.get();
+                            if (error != null) {
+                                this.fail(error);
+                            }
+                        }
+                    } catch (NatsUnrecoverableException e) {
+                        this.fail(e);
+                    }
+                }
+            } catch (Throwable t) {
+                // rule 2.13: downstream onNext() is not allowed to throw, but if it does we need to stop
+                log.error("Nats reactive publisher unexpected exception (will cancel)", t);
+                this.cancelled = true;
+            } finally {
+                // clear any interrupt used to wake us up, so the subscriber can stop cleanly
+                Thread.interrupted();
+                subscriber.stop();
+            }
+        }
+
+    }
+
+}
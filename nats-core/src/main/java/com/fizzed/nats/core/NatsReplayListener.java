@@ -0,0 +1,27 @@
+package com.fizzed.nats.core;
+
+/**
+ * Listens for the progress of a NatsReplayReader. Called on the thread reading messages, so it should return quickly.
+ */
+public interface NatsReplayListener {
+
+    /**
+     * Called periodically (and once caught up) with how far along the replay is.
+     * @param streamSequence the stream sequence of the latest message read
+     * @param pending the number of messages still pending in the stream (zero when caught up)
+     */
+    default void onProgress(long streamSequence, long pending) {
+        // do nothing by default
+    }
+
+    /**
+     * Called when stream sequences were skipped between two messages, e.g. they were deleted, expired, or (if the
+     * replay is filtered by subject) simply belong to other subjects.
+     * @param fromSequence the first skipped stream sequence
+     * @param toSequence the last skipped stream sequence
+     */
+    default void onGap(long fromSequence, long toSequence) {
+        // do nothing by default
+    }
+
+}
@@ -0,0 +1,322 @@
+package com.fizzed.nats.core;
+
+import io.nats.client.*;
+import io.nats.client.api.ConsumerConfiguration;
+import io.nats.client.api.ConsumerInfo;
+import io.nats.client.api.DeliverPolicy;
+import io.nats.client.impl.NatsJetStreamMetaData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Reads a stream from a sequence or time at full speed, e.g. to rebuild downstream state. Unlike the pull subscriber
+ * there is no durable consumer and there are no acks: an ephemeral ordered consumer is used, which nats.java keeps
+ * in order (recreating it if a message is ever missed) and which uses flow control so the server streams as fast as
+ * the reader can keep up. Messages returned cannot be acked. Progress and any gaps in the stream sequence are
+ * reported to the listener.
+ */
+public class NatsReplayReader {
+    static private final Logger log = LoggerFactory.getLogger(NatsReplayReader.class);
+
+    private final Supplier<Connection> connectionSupplier;
+    private String subject;
+    private long startSequence;
+    private ZonedDateTime startTime;
+    private boolean stopAtEnd;
+    private int progressInterval;
+    private NatsReplayListener listener;
+    private JetStreamSubscription subscription;
+    // progress
+    private long lastSequence;
+    private long pending;
+    private long readCount;
+    private long gapCount;
+    private boolean caughtUp;
+
+    public NatsReplayReader(Connection connection) {
+        this(() -> connection);
+    }
+
+    public NatsReplayReader(Supplier<Connection> connectionSupplier) {
+        this.connectionSupplier = connectionSupplier;
+        this.progressInterval = 1000;
+        this.pending = -1L;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public NatsReplayReader setSubject(String subject) {
+        this.subject = subject;
+        return this;
+    }
+
+    public long getStartSequence() {
+        return startSequence;
+    }
+
+    /**
+     * Sets the stream sequence to start reading from. A value of zero (the default) starts from the beginning of the
+     * stream, unless a start time is set.
+     * @param startSequence the stream sequence to start from
+     * @return this reader
+     */
+    public NatsReplayReader setStartSequence(long startSequence) {
+        this.startSequence = startSequence;
+        return this;
+    }
+
+    public ZonedDateTime getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Sets the time to start reading from (the first message at or after this time).
+     * @param startTime the time to start from
+     * @return this reader
+     */
+    public NatsReplayReader setStartTime(ZonedDateTime startTime) {
+        this.startTime = startTime;
+        return this;
+    }
+
+    public boolean isStopAtEnd() {
+        return stopAtEnd;
+    }
+
+    /**
+     * Sets whether the reader stops once it has caught up to the end of the stream, e.g. nextMessage() returns null
+     * immediately from then on. Otherwise the reader keeps waiting for new messages like a normal consumer.
+     * @param stopAtEnd true to stop once caught up
+     * @return this reader
+     */
+    public NatsReplayReader setStopAtEnd(boolean stopAtEnd) {
+        this.stopAtEnd = stopAtEnd;
+        return this;
+    }
+
+    public int getProgressInterval() {
+        return progressInterval;
+    }
+
+    /**
+     * Sets how many messages are read between each progress report to the listener (default is 1000).
+     * @param progressInterval the number of messages between progress reports
+     * @return this reader
+     */
+    public NatsReplayReader setProgressInterval(int progressInterval) {
+        this.progressInterval = progressInterval;
+        return this;
+    }
+
+    public NatsReplayListener getListener() {
+        return listener;
+    }
+
+    public NatsReplayReader setListener(NatsReplayListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Gets the stream sequence of the latest message read (or zero if none yet).
+     * @return the stream sequence
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Gets the number of messages still pending in the stream as of the latest message read (or -1 if none yet).
+     * @return the number of messages pending
+     */
+    public long getPending() {
+        return pending;
+    }
+
+    public long getReadCount() {
+        return readCount;
+    }
+
+    /**
+     * Gets the total number of stream sequences that were skipped between messages read.
+     * @return the number of skipped stream sequences
+     */
+    public long getGapCount() {
+        return gapCount;
+    }
+
+    /**
+     * Whether the reader has read up to what was the end of the stream at the time.
+     * @return true if caught up
+     */
+    public boolean isCaughtUp() {
+        return caughtUp;
+    }
+
+    synchronized public NatsReplayReader start() throws NatsUnrecoverableException {
+        if (this.subscription != null) {
+            throw new NatsUnrecoverableException("Replay already active", null);
+        }
+
+        final ConsumerConfiguration.Builder config = ConsumerConfiguration.builder();
+        if (this.startSequence > 0) {
+            config.deliverPolicy(DeliverPolicy.ByStartSequence).startSequence(this.startSequence);
+        } else if (this.startTime != null) {
+            config.deliverPolicy(DeliverPolicy.ByStartTime).startTime(this.startTime);
+        } else {
+            config.deliverPolicy(DeliverPolicy.All);
+        }
+
+        final JetStreamSubscription subscription;
+        final ConsumerInfo consumerInfo;
+        try {
+            final JetStream js = this.connectionSupplier.get().jetStream();
+
+            // an ordered consumer is ephemeral, w/o acks, w/ flow control, and is kept in order by nats.java
+            subscription = js.subscribe(this.subject, PushSubscribeOptions.builder()
+                .ordered(true)
+                .configuration(config.build())
+                .build());
+        } catch (Exception e) {
+            throw new NatsUnrecoverableException(e.getMessage(), e);
+        }
+
+        try {
+            consumerInfo = subscription.getConsumerInfo();
+        } catch (Exception e) {
+            this.unsubscribe(subscription);
+            throw new NatsUnrecoverableException(e.getMessage(), e);
+        }
+
+        this.subscription = subscription;
+        this.lastSequence = this.startSequence > 0 ? this.startSequence - 1 : 0L;
+        this.pending = -1L;
+        this.readCount = 0L;
+        this.gapCount = 0L;
+        this.caughtUp = false;
+
+        // we normally know we're caught up from the pending count of the last message read, but if there is nothing
+        // to read (e.g. the stream is empty, or we start past its end) no message ever arrives to tell us
+        if (consumerInfo.getNumPending() == 0L && consumerInfo.getDelivered().getConsumerSequence() == 0L) {
+            this.pending = 0L;
+            this.caughtUp = true;
+            if (this.listener != null) {
+                this.listener.onProgress(this.lastSequence, 0L);
+            }
+        }
+
+        return this;
+    }
+
+    synchronized public void stop() {
+        if (this.subscription != null) {
+            this.unsubscribe(this.subscription);
+            this.subscription = null;
+        }
+    }
+
+    private void unsubscribe(JetStreamSubscription subscription) {
+        try {
+            subscription.unsubscribe();
+        } catch (Exception e) {
+            // the ordered consumer is ephemeral, so the server will clean it up on its own anyway
+            log.warn("Nats unsubscribe failed (but we are ignoring it so that we can stop() the replay reader)", e);
+        }
+    }
+
+    public NatsReliableMessage nextMessage(Duration pollTime) throws NatsUnrecoverableException, InterruptedException {
+        final JetStreamSubscription subscription = this.subscription;
+        if (subscription == null) {
+            throw new NatsUnrecoverableException("Replay is not active (did you forget to call .start() ?)", null);
+        }
+
+        if (this.stopAtEnd && this.caughtUp) {
+            return null;
+        }
+
+        // NOTE: nats.java treats a zero timeout as "wait forever", which is definitely not what we want
+        final long pollMillis = Math.max(1L, pollTime.toMillis());
+
+        final Message message;
+        try {
+            message = subscription.nextMessage(Duration.ofMillis(pollMillis));
+        } catch (IllegalStateException e) {
+            // nats.java uses this to represent a lot of various problems, from subscriptions being inactive, etc.
+            throw new NatsUnrecoverableException(e.getMessage(), e);
+        }
+
+        if (message == null) {
+            return null;
+        }
+
+        this.track(message);
+
+        return new NatsReliableMessage(message);
+    }
+
+    /**
+     * Reads up to the max number of messages that are immediately available, waiting up to the poll time for the
+     * first one.
+     * @param maxMessages the max number of messages to return
+     * @param pollTime the max time to wait for the first message
+     * @return the messages or null if none were available
+     */
+    public List<NatsReliableMessage> nextMessages(int maxMessages, Duration pollTime) throws NatsUnrecoverableException, InterruptedException {
+        final NatsReliableMessage first = this.nextMessage(pollTime);
+        if (first == null) {
+            return null;
+        }
+
+        final List<NatsReliableMessage> messages = new ArrayList<>(Math.min(maxMessages, 256));
+        messages.add(first);
+
+        while (messages.size() < maxMessages && !(this.stopAtEnd && this.caughtUp)) {
+            // messages streaming in are already buffered locally, so only wait a very short while for the rest
+            final NatsReliableMessage message = this.nextMessage(Duration.ofMillis(1L));
+            if (message == null) {
+                break;
+            }
+            messages.add(message);
+        }
+
+        return messages;
+    }
+
+    private void track(Message message) {
+        final NatsJetStreamMetaData md = message.metaData();
+        if (md == null) {
+            return;
+        }
+
+        final long sequence = md.streamSequence();
+        // NOTE: from the beginning of the stream, the first sequence is whatever the stream starts at (not a gap)
+        if (sequence > this.lastSequence + 1 && (this.readCount > 0 || this.startSequence > 0)) {
+            this.gapCount += sequence - this.lastSequence - 1;
+            if (this.listener != null) {
+                this.listener.onGap(this.lastSequence + 1, sequence - 1);
+            }
+        }
+
+        this.lastSequence = sequence;
+        this.pending = md.pendingCount();
+        this.readCount++;
+
+        final boolean nowCaughtUp = this.pending == 0L && !this.caughtUp;
+        if (nowCaughtUp) {
+            this.caughtUp = true;
+        }
+
+        if (this.listener != null && (nowCaughtUp || (this.progressInterval > 0 && this.readCount % this.progressInterval == 0))) {
+            this.listener.onProgress(sequence, this.pending);
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.fizzed.nats.core;
+
+/**
+ * The state of a NatsReliableStreamPullSubscriber.
+ */
+public enum NatsSubscriberState {
+
+    /** Not yet started (or stopped). */
+    STOPPED(false, false),
+    /** Subscribed and connected, messages can be fetched. */
+    CONNECTED(false, false),
+    /** The connection was lost, it'll be recovered once reconnected. */
+    DISCONNECTED(true, true),
+    /** The nats server is shutting down soon (e.g. a rolling upgrade), a good time to drain and stop claiming work. */
+    LAME_DUCK(true, true),
+    /** The connection was closed, which nats.java never reopens, so this is not recoverable. */
+    CLOSED(true, false),
+    /** nats.java decided the subscription is no longer valid (e.g. its stream or consumer was deleted). */
+    SUBSCRIPTION_INACTIVE(true, false);
+
+    private final boolean unhealthy;
+    private final boolean connectionProblem;
+
+    NatsSubscriberState(boolean unhealthy, boolean connectionProblem) {
+        this.unhealthy = unhealthy;
+        this.connectionProblem = connectionProblem;
+    }
+
+    public boolean isUnhealthy() {
+        return unhealthy;
+    }
+
+    /**
+     * Whether the state is a problem with the connection, which is recoverable once the connection is re-established.
+     * @return true if a connection problem
+     */
+    public boolean isConnectionProblem() {
+        return connectionProblem;
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.fizzed.nats.core;
+
+/**
+ * Listens for state changes of a NatsReliableStreamPullSubscriber. Listeners are called on the thread that caused the
+ * change (e.g. a nats.java connection event thread), so they should return quickly.
+ */
+@FunctionalInterface
+public interface NatsSubscriberStateListener {
+
+    void stateChanged(NatsReliableStreamPullSubscriber subscriber, NatsSubscriberState previousState, NatsSubscriberState state);
+
+}
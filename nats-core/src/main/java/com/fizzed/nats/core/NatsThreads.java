@@ -0,0 +1,31 @@
+package com.fizzed.nats.core;
+
+/**
+ * Creates the threads used by the subscribers, dispatchers, etc. in this library. This is the Java 8+ version, which
+ * always creates platform threads. On Java 21+ the multi-release jar replaces this class with a version that creates
+ * virtual threads when requested.
+ */
+public class NatsThreads {
+
+    /**
+     * Whether virtual threads are supported by this runtime.
+     * @return true if virtual threads are supported
+     */
+    static public boolean isVirtualSupported() {
+        return false;
+    }
+
+    /**
+     * Creates a new (unstarted) thread. Platform threads are created as daemon threads.
+     * @param name the name of the thread
+     * @param virtual whether a virtual thread is preferred (ignored on this runtime)
+     * @param runnable the work to run
+     * @return the unstarted thread
+     */
+    static public Thread newThread(String name, boolean virtual, Runnable runnable) {
+        final Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+}
@@ -0,0 +1,175 @@
+package com.fizzed.nats.core;
+
+import io.nats.client.Message;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Traces messages cheaply enough to leave on in production. A trace is only rendered when it is actually logged (or
+ * when the ring buffer is inspected), only a sample of messages are traced, and payloads are truncated without
+ * splitting multi-byte characters. Optionally the most recent sampled messages are kept in a bounded ring buffer,
+ * which is handy for post-mortem inspection even when debug logging is off.
+ *
+ * e.g. tracer.trace(log, "Processing request\n{}", message);
+ */
+public class NatsTracer {
+
+    static private class Trace {
+        private final long timestamp;
+        private final Message message;
+        private final NatsReliableMessage reliableMessage;
+
+        public Trace(long timestamp, Message message, NatsReliableMessage reliableMessage) {
+            this.timestamp = timestamp;
+            this.message = message;
+            this.reliableMessage = reliableMessage;
+        }
+    }
+
+    // only rendered if slf4j actually decides to log it
+    private class LazyDump {
+        private final Message message;
+        private final NatsReliableMessage reliableMessage;
+
+        public LazyDump(Message message, NatsReliableMessage reliableMessage) {
+            this.message = message;
+            this.reliableMessage = reliableMessage;
+        }
+
+        @Override
+        public String toString() {
+            return render(this.message, this.reliableMessage);
+        }
+    }
+
+    private double sampleRate;
+    private int maxDataLength;
+    private AtomicReferenceArray<Trace> ringBuffer;
+    private final AtomicLong ringIndex;
+
+    public NatsTracer() {
+        this.sampleRate = 1.0d;
+        this.maxDataLength = 255;
+        this.ringIndex = new AtomicLong();
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Sets the fraction of messages that will be traced, e.g. 0.01 traces 1 out of every 100 messages on average.
+     * @param sampleRate the sample rate between 0.0 (never) and 1.0 (always, the default)
+     * @return this tracer
+     */
+    public NatsTracer setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+        return this;
+    }
+
+    public int getMaxDataLength() {
+        return maxDataLength;
+    }
+
+    /**
+     * Sets the max number of payload bytes that will be rendered in a trace (default is 255).
+     * @param maxDataLength the max number of bytes to render
+     * @return this tracer
+     */
+    public NatsTracer setMaxDataLength(int maxDataLength) {
+        this.maxDataLength = maxDataLength;
+        return this;
+    }
+
+    public int getRingBufferSize() {
+        final AtomicReferenceArray<Trace> ring = this.ringBuffer;
+        return ring != null ? ring.length() : 0;
+    }
+
+    /**
+     * Keeps the most recent sampled messages in a ring buffer of this size (regardless of whether they were logged),
+     * which can be inspected with getRecentTraces(). A value of zero (the default) disables the ring buffer. Since
+     * the messages are kept, their payloads are not garbage collected until they are overwritten.
+     * @param ringBufferSize the number of recent messages to keep or zero to disable
+     * @return this tracer
+     */
+    public NatsTracer setRingBufferSize(int ringBufferSize) {
+        this.ringBuffer = ringBufferSize > 0 ? new AtomicReferenceArray<>(ringBufferSize) : null;
+        this.ringIndex.set(0L);
+        return this;
+    }
+
+    public boolean isSampled() {
+        final double rate = this.sampleRate;
+        if (rate >= 1.0d) {
+            return true;
+        }
+        return rate > 0.0d && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    public void trace(Logger log, String format, NatsReliableMessage message) {
+        if (message != null) {
+            this.trace(log, format, message.unwrap(), message);
+        }
+    }
+
+    public void trace(Logger log, String format, Message message) {
+        if (message != null) {
+            this.trace(log, format, message, null);
+        }
+    }
+
+    private void trace(Logger log, String format, Message message, NatsReliableMessage reliableMessage) {
+        final AtomicReferenceArray<Trace> ring = this.ringBuffer;
+        final boolean debug = log != null && log.isDebugEnabled();
+
+        // nothing will be done w/ the trace, so don't even pay for sampling
+        if ((!debug && ring == null) || !this.isSampled()) {
+            return;
+        }
+
+        if (ring != null) {
+            final int slot = (int)(this.ringIndex.getAndIncrement() % ring.length());
+            ring.set(slot, new Trace(System.currentTimeMillis(), message, reliableMessage));
+        }
+
+        if (debug) {
+            log.debug(format, new LazyDump(message, reliableMessage));
+        }
+    }
+
+    /**
+     * Renders the most recent sampled messages in the ring buffer, from oldest to newest.
+     * @return the rendered traces (empty if the ring buffer is disabled)
+     */
+    public List<String> getRecentTraces() {
+        final AtomicReferenceArray<Trace> ring = this.ringBuffer;
+        if (ring == null) {
+            return new ArrayList<>();
+        }
+
+        final long end = this.ringIndex.get();
+        final long start = Math.max(0L, end - ring.length());
+        final List<String> traces = new ArrayList<>((int)(end - start));
+        for (long i = start; i < end; i++) {
+            final Trace trace = ring.get((int)(i % ring.length()));
+            if (trace != null) {
+                traces.add("timestamp: " + trace.timestamp + "\n" + this.render(trace.message, trace.reliableMessage));
+            }
+        }
+        return traces;
+    }
+
+    private String render(Message message, NatsReliableMessage reliableMessage) {
+        if (reliableMessage != null) {
+            return NatsHelper.dumpMessage(reliableMessage, this.maxDataLength);
+        }
+        return NatsHelper.dumpMessage(message, this.maxDataLength);
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.fizzed.nats.core;
+
+/**
+ * Creates the threads used by the subscribers, dispatchers, etc. in this library. This is the Java 21+ version, which
+ * creates virtual threads when requested, so that thousands of blocking consumer loops, workers, ackSync() calls, etc.
+ * are cheap to run.
+ */
+public class NatsThreads {
+
+    /**
+     * Whether virtual threads are supported by this runtime.
+     * @return true if virtual threads are supported
+     */
+    static public boolean isVirtualSupported() {
+        return true;
+    }
+
+    /**
+     * Creates a new (unstarted) thread. Platform threads are created as daemon threads, while virtual threads are
+     * always daemon threads.
+     * @param name the name of the thread
+     * @param virtual whether a virtual thread is preferred
+     * @param runnable the work to run
+     * @return the unstarted thread
+     */
+    static public Thread newThread(String name, boolean virtual, Runnable runnable) {
+        if (virtual) {
+            return Thread.ofVirtual()
+                .name(name)
+                .unstarted(runnable);
+        }
+        final Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.fizzed.nats.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class NatsAdaptiveFetchTest {
+
+    @Test
+    void growsWhenFullAndShrinksWhenPartial() {
+        final NatsAdaptiveFetch adaptiveFetch = new NatsAdaptiveFetch()
+            .setMaxBatchSize(16);
+
+        assertThat(adaptiveFetch.getBatchSize(), is(1));
+
+        adaptiveFetch.recordFetch(1, 1);
+        assertThat(adaptiveFetch.getBatchSize(), is(2));
+
+        adaptiveFetch.recordFetch(2, 2);
+        adaptiveFetch.recordFetch(4, 4);
+        adaptiveFetch.recordFetch(8, 8);
+        assertThat(adaptiveFetch.getBatchSize(), is(16));
+
+        // never beyond the max
+        adaptiveFetch.recordFetch(16, 16);
+        assertThat(adaptiveFetch.getBatchSize(), is(16));
+
+        // shrinks toward what was available
+        adaptiveFetch.recordFetch(16, 2);
+        assertThat(adaptiveFetch.getBatchSize(), is(9));
+        assertThat(adaptiveFetch.getFillRatio() < 1.0d, is(true));
+    }
+
+    @Test
+    void cappedByProcessingTime() {
+        final NatsAdaptiveFetch adaptiveFetch = new NatsAdaptiveFetch()
+            .setMaxBatchSize(100)
+            .setTargetBatchTime(Duration.ofSeconds(1));
+
+        for (int i = 0; i < 10; i++) {
+            adaptiveFetch.recordFetch(100, 100);
+        }
+
+        assertThat(adaptiveFetch.getBatchSize(), is(100));
+
+        // 100ms per message means only 10 can be processed in the target batch time
+        adaptiveFetch.recordProcessing(5, TimeUnit.MILLISECONDS.toNanos(500L));
+
+        assertThat(adaptiveFetch.getProcessingTimePerMessage(), is(Duration.ofMillis(100L)));
+        assertThat(adaptiveFetch.getBatchSize(), is(10));
+    }
+
+    @Test
+    void expiresInGrowsWhenIdle() {
+        final NatsAdaptiveFetch adaptiveFetch = new NatsAdaptiveFetch()
+            .setMinExpiresIn(Duration.ofSeconds(1))
+            .setMaxExpiresIn(Duration.ofSeconds(3));
+
+        adaptiveFetch.recordFetch(1, 0);
+        assertThat(adaptiveFetch.getExpiresIn(), is(Duration.ofSeconds(2)));
+
+        adaptiveFetch.recordFetch(1, 0);
+        assertThat(adaptiveFetch.getExpiresIn(), is(Duration.ofSeconds(3)));
+
+        adaptiveFetch.recordFetch(1, 1);
+        assertThat(adaptiveFetch.getExpiresIn(), is(Duration.ofSeconds(1)));
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.fizzed.nats.core;
+
+import io.nats.NatsServerRunner;
+import io.nats.client.Connection;
+import io.nats.client.Nats;
+import io.nats.client.Options;
+import io.nats.client.impl.NatsMessage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class NatsConnectionPoolTest extends NatsBaseTest {
+
+    @Test
+    void roundRobinAndKeyed() throws Exception {
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            final NatsConnectionPool pool = new NatsConnectionPool(() -> {
+                try {
+                    return Nats.connect(Options.builder()
+                        .server(nats.getURI())
+                        .connectionName("unit-test-pool")
+                        .build());
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }, 3);
+
+            try {
+                assertThat(pool.getSize(), is(3));
+                assertThat(pool.getHealthyCount(), is(0));
+
+                // round-robin should assign every connection in the pool
+                final Set<Connection> connections = new HashSet<>();
+                for (int i = 0; i < 6; i++) {
+                    connections.add(pool.get());
+                }
+
+                assertThat(connections.size(), is(3));
+                assertThat(pool.getHealthyCount(), is(3));
+
+                // the same key always gets the same connection
+                final Supplier<Connection> keyed = pool.forKey("orders");
+
+                assertThat(keyed.get(), is(sameInstance(keyed.get())));
+                assertThat(pool.forKey("orders").get(), is(sameInstance(keyed.get())));
+
+                // a publisher and subscriber work with the pool like any other provider
+                final String subjectName = this.randomSubjectName();
+
+                this.cleanNats(pool.get());
+                NatsHelper.createWorkQueueStream(pool.get(), this.randomStreamName(), subjectName);
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(pool)
+                    .start();
+
+                publisher.publish(NatsMessage.builder()
+                    .subject(subjectName)
+                    .data("Hello")
+                    .build());
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(pool)
+                    .setSubject(subjectName)
+                    .setDurable(this.randomDurableName())
+                    .start();
+
+                final NatsReliableMessage message = subscriber.nextMessage(Duration.ofSeconds(5));
+
+                assertThat(message.getString(), is("Hello"));
+
+                message.ack();
+
+                subscriber.stop();
+            } finally {
+                pool.close();
+            }
+
+            assertThat(pool.getHealthyCount(), is(0));
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.fizzed.nats.core;
+
+import io.nats.NatsServerRunner;
+import io.nats.client.Connection;
+import io.nats.client.api.AckPolicy;
+import io.nats.client.api.ConsumerConfiguration;
+import io.nats.client.impl.NatsMessage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static com.fizzed.nats.core.NatsHelper.createWorkQueueStream;
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class NatsInProgressTimerTest extends NatsBaseTest {
+
+    @Test
+    void keepsLongRunningMessagesInProgress() throws Exception {
+        final String streamName = this.randomStreamName();
+        final String subjectName = this.randomSubjectName();
+        final String durable = this.randomDurableName();
+
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                // create stream for work queue
+                createWorkQueueStream(connection, streamName, subjectName);
+
+                // a short ack wait, so any message not kept in progress is redelivered quickly
+                connection.jetStreamManagement().addOrUpdateConsumer(streamName, ConsumerConfiguration.builder()
+                    .durable(durable)
+                    .ackPolicy(AckPolicy.Explicit)
+                    .ackWait(Duration.ofSeconds(1))
+                    .build());
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .start();
+
+                for (int i = 0; i < 2; i++) {
+                    publisher.publish(NatsMessage.builder()
+                        .subject(subjectName)
+                        .data("Hello " + i)
+                        .build());
+                }
+
+                final NatsInProgressTimer timer = new NatsInProgressTimer(Duration.ofMillis(10L), 64);
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(connection)
+                    .setSubject(subjectName)
+                    .setDurable(durable)
+                    .setInProgressTimer(timer)
+                    .start();
+
+                final NatsReliableMessage message0 = subscriber.nextMessage(Duration.ofSeconds(5));
+                final NatsReliableMessage message1 = subscriber.nextMessage(Duration.ofSeconds(5));
+
+                assertThat(message0.getString(), is("Hello 0"));
+                assertThat(message1.getString(), is("Hello 1"));
+                assertThat(timer.getTrackedCount(), is(2));
+
+                // "process" for well beyond the ack wait
+                Thread.sleep(2500L);
+
+                // neither was redelivered, since both were kept in progress
+                assertThat(subscriber.nextMessage(Duration.ofMillis(500L)), is(nullValue()));
+                assertThat(timer.getSentCount() >= 4L, is(true));
+
+                message0.ack();
+
+                assertThat(timer.getTrackedCount(), is(1));
+
+                // once nak'ed, its no longer kept in progress and is redelivered
+                message1.nak();
+
+                assertThat(timer.getTrackedCount(), is(0));
+
+                final NatsReliableMessage redelivered = subscriber.nextMessage(Duration.ofSeconds(5));
+
+                assertThat(redelivered.getString(), is("Hello 1"));
+
+                redelivered.term();
+
+                assertThat(timer.getTrackedCount(), is(0));
+
+                subscriber.stop();
+                timer.stop();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.fizzed.nats.core;
+
+import com.fizzed.crux.util.WaitFor;
+import io.nats.NatsServerRunner;
+import io.nats.client.Connection;
+import io.nats.client.KeyValue;
+import io.nats.client.api.KeyValueConfiguration;
+import io.nats.client.api.StorageType;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class NatsKeyValueCacheTest extends NatsBaseTest {
+
+    @Test
+    void readThroughAndWatch() throws Exception {
+        final String bucket = "bucket-" + this.randomStreamName();
+
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                connection.keyValueManagement().create(KeyValueConfiguration.builder()
+                    .name(bucket)
+                    .storageType(StorageType.Memory)
+                    .build());
+
+                final KeyValue kv = connection.keyValue(bucket);
+
+                kv.put("a", "1");
+
+                final NatsKeyValueCache cache = new NatsKeyValueCache(connection, bucket)
+                    .setMaxEntries(2)
+                    .start();
+
+                // first read is from the server, then its cached
+                assertThat(cache.getString("a"), is("1"));
+                assertThat(cache.getString("a"), is("1"));
+                assertThat(cache.getMissCount(), is(1L));
+                assertThat(cache.getHitCount(), is(1L));
+
+                // missing keys are cached too
+                assertThat(cache.getString("b"), is(nullValue()));
+                assertThat(cache.getString("b"), is(nullValue()));
+                assertThat(cache.getMissCount(), is(2L));
+
+                // the watcher updates cached keys
+                kv.put("a", "2");
+
+                WaitFor.of(() -> "2".equals(getStringQuietly(cache, "a")))
+                    .requireMillis(5000L, 50L);
+
+                kv.put("b", "3");
+
+                WaitFor.of(() -> "3".equals(getStringQuietly(cache, "b")))
+                    .requireMillis(5000L, 50L);
+
+                kv.delete("a");
+
+                WaitFor.of(() -> getStringQuietly(cache, "a") == null)
+                    .requireMillis(5000L, 50L);
+
+                assertThat(cache.getMissCount(), is(2L));
+
+                // the least recently used is evicted
+                assertThat(cache.getString("c"), is(nullValue()));
+                assertThat(cache.size(), is(2));
+
+                cache.stop();
+            }
+        }
+    }
+
+    static private String getStringQuietly(NatsKeyValueCache cache, String key) {
+        // the lambdas of WaitFor can't throw checked exceptions
+        try {
+            return cache.getString(key);
+        } catch (NatsRecoverableException | NatsUnrecoverableException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
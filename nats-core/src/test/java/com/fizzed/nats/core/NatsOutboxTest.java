@@ -0,0 +1,262 @@
+package com.fizzed.nats.core;
+
+import com.fizzed.crux.util.WaitFor;
+import io.nats.NatsServerRunner;
+import io.nats.client.Connection;
+import io.nats.client.JetStreamApiException;
+import io.nats.client.Message;
+import io.nats.client.api.RetentionPolicy;
+import io.nats.client.api.StorageType;
+import io.nats.client.api.StreamConfiguration;
+import io.nats.client.impl.NatsMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.fizzed.nats.core.NatsHelper.createWorkQueueStream;
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class NatsOutboxTest extends NatsBaseTest {
+
+    @Test
+    void appendAndForward(@TempDir Path dir) throws Exception {
+        final String streamName = this.randomStreamName();
+        final String subjectName = this.randomSubjectName();
+
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                // create stream for work queue
+                createWorkQueueStream(connection, streamName, subjectName);
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .start();
+
+                // small segments, so the log rolls over a few times
+                final NatsOutbox outbox = new NatsOutbox(publisher, dir)
+                    .setSegmentSize(512)
+                    .setBatchSize(7)
+                    .start();
+
+                for (int i = 0; i < 50; i++) {
+                    outbox.append(NatsMessage.builder()
+                        .subject(subjectName)
+                        .data("Hello " + i)
+                        .build());
+                }
+
+                WaitFor.of(outbox::isDrained)
+                    .requireMillis(10000L, 50L);
+
+                assertThat(outbox.getAppendedCount(), is(50L));
+                assertThat(outbox.getForwardedCount(), is(50L));
+                // forwarded segments are deleted
+                assertThat(outbox.getSegmentCount(), is(1));
+
+                outbox.stop();
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(connection)
+                    .setSubject(subjectName)
+                    .setDurable(this.randomDurableName())
+                    .start();
+
+                final List<NatsReliableMessage> messages = subscriber.nextMessages(100, Duration.ofSeconds(2));
+
+                assertThat(messages.size(), is(50));
+                assertThat(messages.get(0).getString(), is("Hello 0"));
+                assertThat(messages.get(49).getString(), is("Hello 49"));
+                assertThat(messages.get(0).getHeaders().getFirst("Nats-Msg-Id"), is(notNullValue()));
+
+                subscriber.stop();
+            }
+        }
+    }
+
+    @Test
+    void deadLetters(@TempDir Path dir) throws Exception {
+        final String streamName = this.randomStreamName();
+        final String subjectName = this.randomSubjectName();
+
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                // create stream for work queue
+                createWorkQueueStream(connection, streamName, subjectName);
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .start();
+
+                final List<Message> deadLetters = new CopyOnWriteArrayList<>();
+
+                final NatsOutbox outbox = new NatsOutbox(publisher, dir)
+                    .setDeadLetterListener((message, exception) -> deadLetters.add(message))
+                    .start();
+
+                outbox.append(NatsMessage.builder()
+                    .subject(subjectName)
+                    .data("Hello 0")
+                    .build());
+
+                // larger than the max payload of the nats server, it'll never be accepted
+                outbox.append(NatsMessage.builder()
+                    .subject(subjectName)
+                    .data(new byte[2 * 1024 * 1024])
+                    .build());
+
+                outbox.append(NatsMessage.builder()
+                    .subject(subjectName)
+                    .data("Hello 2")
+                    .build());
+
+                WaitFor.of(outbox::isDrained)
+                    .requireMillis(10000L, 50L);
+
+                assertThat(outbox.getForwardedCount(), is(2L));
+                assertThat(outbox.getDeadLetterCount(), is(1L));
+                assertThat(deadLetters.size(), is(1));
+                assertThat(deadLetters.get(0).getData().length, is(2 * 1024 * 1024));
+
+                outbox.stop();
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(connection)
+                    .setSubject(subjectName)
+                    .setDurable(this.randomDurableName())
+                    .start();
+
+                final List<NatsReliableMessage> messages = subscriber.nextMessages(100, Duration.ofSeconds(2));
+
+                assertThat(messages.size(), is(2));
+                assertThat(messages.get(0).getString(), is("Hello 0"));
+                assertThat(messages.get(1).getString(), is("Hello 2"));
+
+                subscriber.stop();
+            }
+        }
+    }
+
+    @Test
+    void deadLettersRejectedByStream(@TempDir Path dir) throws Exception {
+        final String streamName = this.randomStreamName();
+        final String subjectName = this.randomSubjectName();
+
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                // the nats server would accept the message, but the stream itself rejects it
+                connection.jetStreamManagement().addStream(StreamConfiguration.builder()
+                    .name(streamName)
+                    .storageType(StorageType.Memory)
+                    .subjects(subjectName)
+                    .retentionPolicy(RetentionPolicy.WorkQueue)
+                    .maximumMessageSize(256)
+                    .build());
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .start();
+
+                final List<Exception> exceptions = new CopyOnWriteArrayList<>();
+
+                final NatsOutbox outbox = new NatsOutbox(publisher, dir)
+                    .setDeadLetterListener((message, exception) -> exceptions.add(exception))
+                    .start();
+
+                outbox.append(NatsMessage.builder()
+                    .subject(subjectName)
+                    .data("Hello 0")
+                    .build());
+
+                outbox.append(NatsMessage.builder()
+                    .subject(subjectName)
+                    .data(new byte[1024])
+                    .build());
+
+                outbox.append(NatsMessage.builder()
+                    .subject(subjectName)
+                    .data("Hello 2")
+                    .build());
+
+                WaitFor.of(outbox::isDrained)
+                    .requireMillis(10000L, 50L);
+
+                assertThat(outbox.getForwardedCount(), is(2L));
+                assertThat(outbox.getDeadLetterCount(), is(1L));
+                assertThat(exceptions.size(), is(1));
+                assertThat(exceptions.get(0).getCause(), instanceOf(JetStreamApiException.class));
+
+                outbox.stop();
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(connection)
+                    .setSubject(subjectName)
+                    .setDurable(this.randomDurableName())
+                    .start();
+
+                final List<NatsReliableMessage> messages = subscriber.nextMessages(100, Duration.ofSeconds(2));
+
+                assertThat(messages.size(), is(2));
+                assertThat(messages.get(0).getString(), is("Hello 0"));
+                assertThat(messages.get(1).getString(), is("Hello 2"));
+
+                subscriber.stop();
+            }
+        }
+    }
+
+    @Test
+    void survivesRestart(@TempDir Path dir) throws Exception {
+        final String streamName = this.randomStreamName();
+        final String subjectName = this.randomSubjectName();
+
+        // the publisher is never started, so nothing can be forwarded (like the nats server is down)
+        final NatsOutbox outbox1 = new NatsOutbox(new NatsReliableStreamPublisher(() -> null), dir)
+            .setSegmentSize(256)
+            .start();
+
+        for (int i = 0; i < 10; i++) {
+            outbox1.append(NatsMessage.builder()
+                .subject(subjectName)
+                .data("Hello " + i)
+                .build());
+        }
+
+        assertThat(outbox1.isDrained(), is(false));
+        assertThat(outbox1.getSegmentCount() > 1, is(true));
+
+        outbox1.stop();
+
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                // create stream for work queue
+                createWorkQueueStream(connection, streamName, subjectName);
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .start();
+
+                final NatsOutbox outbox2 = new NatsOutbox(publisher, dir)
+                    .setSegmentSize(256)
+                    .start();
+
+                WaitFor.of(outbox2::isDrained)
+                    .requireMillis(10000L, 50L);
+
+                assertThat(outbox2.getForwardedCount(), is(10L));
+
+                outbox2.stop();
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(connection)
+                    .setSubject(subjectName)
+                    .setDurable(this.randomDurableName())
+                    .start();
+
+                final List<NatsReliableMessage> messages = subscriber.nextMessages(100, Duration.ofSeconds(2));
+
+                assertThat(messages.size(), is(10));
+                assertThat(messages.get(9).getString(), is("Hello 9"));
+
+                subscriber.stop();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.fizzed.nats.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class NatsRedeliveryDedupTest {
+
+    @Test
+    void evictsOldest() {
+        final NatsRedeliveryDedup dedup = new NatsRedeliveryDedup(3);
+
+        dedup.add(1L);
+        dedup.add(2L);
+        dedup.add(3L);
+        // already present, so nothing is evicted
+        dedup.add(2L);
+
+        assertThat(dedup.size(), is(3));
+        assertThat(dedup.contains(1L), is(true));
+
+        dedup.add(4L);
+
+        assertThat(dedup.size(), is(3));
+        assertThat(dedup.contains(1L), is(false));
+        assertThat(dedup.contains(2L), is(true));
+        assertThat(dedup.contains(4L), is(true));
+
+        assertThat(dedup.isDuplicate(4L), is(true));
+        assertThat(dedup.isDuplicate(5L), is(false));
+        assertThat(dedup.getDuplicateCount(), is(1L));
+    }
+
+    @Test
+    void matchesHashSet() {
+        final int capacity = 1000;
+        final NatsRedeliveryDedup dedup = new NatsRedeliveryDedup(capacity);
+        final Set<Long> expected = new HashSet<>();
+        final ArrayDeque<Long> order = new ArrayDeque<>();
+        final Random random = new Random(1L);
+
+        // lots of evictions w/ colliding sequences, to exercise the deletes of the hash table
+        for (int i = 0; i < 100000; i++) {
+            final long sequence = 1L + random.nextInt(5000);
+            if (expected.add(sequence)) {
+                order.addLast(sequence);
+                if (order.size() > capacity) {
+                    expected.remove(order.removeFirst());
+                }
+            }
+            dedup.add(sequence);
+        }
+
+        assertThat(dedup.size(), is(expected.size()));
+        for (long sequence = 1L; sequence <= 5000L; sequence++) {
+            assertThat(dedup.contains(sequence), is(expected.contains(sequence)));
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.fizzed.nats.core;
+
+import io.nats.client.impl.NatsMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class NatsReliableMessageTest {
+
+    static public class Order {
+        public String id;
+        public int quantity;
+    }
+
+    static public class OrderBinaryCodec extends NatsBinaryCodec<Order> {
+        @Override
+        protected void write(Order value, DataOutput output) throws IOException {
+            output.writeUTF(value.id);
+            output.writeInt(value.quantity);
+        }
+
+        @Override
+        protected Order read(DataInput input) throws IOException {
+            final Order order = new Order();
+            order.id = input.readUTF();
+            order.quantity = input.readInt();
+            return order;
+        }
+    }
+
+    @Test
+    void payloadViews() throws Exception {
+        final NatsReliableMessage message = new NatsReliableMessage(NatsMessage.builder()
+            .subject("test")
+            .data("Hello é")
+            .build());
+
+        assertThat(message.getDataLength(), is(8));
+
+        // decoded once and then cached
+        final String s = message.getString();
+        assertThat(s, is("Hello é"));
+        assertThat(message.getString(), sameInstance(s));
+
+        final ByteBuffer buffer = message.getByteBuffer();
+        assertThat(buffer.remaining(), is(8));
+        assertThat(buffer.isReadOnly(), is(true));
+        assertThat(buffer.get(0), is((byte)'H'));
+        try {
+            buffer.put(0, (byte)'h');
+            fail("Expected buffer to be read-only");
+        } catch (ReadOnlyBufferException e) {
+            // expected
+        }
+
+        try (InputStream input = message.getInputStream()) {
+            final byte[] bytes = new byte[16];
+            final int read = input.read(bytes);
+            assertThat(new String(bytes, 0, read, StandardCharsets.UTF_8), is("Hello é"));
+        }
+    }
+
+    @Test
+    void payloadViewsWithNoData() throws Exception {
+        final NatsReliableMessage message = new NatsReliableMessage(NatsMessage.builder()
+            .subject("test")
+            .build());
+
+        assertThat(message.getDataLength(), is(0));
+        assertThat(message.getString(), is(""));
+        assertThat(message.getByteBuffer().remaining(), is(0));
+        assertThat(message.getInputStream().read(), is(-1));
+    }
+
+    @Test
+    void compressedPayloadOverMaxInflatedSize() throws Exception {
+        // 1MB of zeros compresses to ~1KB
+        final NatsMessage compressed = (NatsMessage)NatsCompression.compress(NatsMessage.builder()
+            .subject("test")
+            .data(new byte[1024 * 1024])
+            .build(), 1);
+
+        assertThat(compressed.getData().length < 16 * 1024, is(true));
+
+        final NatsReliableMessage message1 = new NatsReliableMessage(compressed);
+
+        assertThat(message1.getDataLength(), is(1024 * 1024));
+
+        final NatsReliableMessage message2 = new NatsReliableMessage(compressed,
+            new NatsReliableStreamPullSubscriber(() -> null).setMaxInflatedSize(512 * 1024));
+
+        try {
+            message2.getData();
+            fail("Expected getData() to have failed");
+        } catch (UncheckedIOException e) {
+            assertThat(e.getMessage(), containsString("max of 524288 bytes"));
+        }
+    }
+
+    @Test
+    void valueWithJacksonCodec() throws Exception {
+        final NatsJacksonCodec<Order> codec = NatsJacksonCodec.of(Order.class);
+
+        final Order order = new Order();
+        order.id = "a1";
+        order.quantity = 5;
+
+        final NatsReliableMessage message = new NatsReliableMessage(NatsMessage.builder()
+            .subject("test")
+            .data(codec.encode(order))
+            .build());
+
+        assertThat(message.getString(), is("{\"id\":\"a1\",\"quantity\":5}"));
+
+        // decoded once and then cached
+        final Order value = message.getValue(codec);
+        assertThat(value.id, is("a1"));
+        assertThat(value.quantity, is(5));
+        assertThat(message.getValue(codec), sameInstance(value));
+    }
+
+    @Test
+    void valueWithBinaryCodec() throws Exception {
+        final OrderBinaryCodec codec = new OrderBinaryCodec();
+
+        for (int i = 0; i < 3; i++) {
+            final Order order = new Order();
+            order.id = "b" + i;
+            order.quantity = i;
+
+            final NatsReliableMessage message = new NatsReliableMessage(NatsMessage.builder()
+                .subject("test")
+                .data(codec.encode(order))
+                .build());
+
+            // 2 bytes for the string length + 2 chars + 4 bytes for the int
+            assertThat(message.getDataLength(), is(8));
+
+            final Order value = message.getValue(codec);
+            assertThat(value.id, is("b" + i));
+            assertThat(value.quantity, is(i));
+        }
+    }
+
+    @Test
+    void valueWithNoCodec() throws Exception {
+        final NatsReliableMessage message = new NatsReliableMessage(NatsMessage.builder()
+            .subject("test")
+            .data("Hello")
+            .build());
+
+        try {
+            message.getValue();
+            fail("Expected getValue() to have failed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,190 @@
+package com.fizzed.nats.core;
+
+import io.nats.NatsServerRunner;
+import io.nats.client.Connection;
+import io.nats.client.impl.NatsMessage;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.fizzed.nats.core.NatsHelper.createWorkQueueStream;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class NatsReliableStreamDispatcherTest extends NatsBaseTest {
+    static private final Logger log = LoggerFactory.getLogger(NatsReliableStreamDispatcherTest.class);
+
+    @Test
+    void dispatchOrderedBySubject() throws Exception {
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                final String subjectName = this.randomSubjectName();
+
+                createWorkQueueStream(connection, this.randomStreamName(), subjectName + ".>");
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .start();
+
+                // 3 subjects w/ 10 messages each
+                for (int i = 0; i < 10; i++) {
+                    for (String key : new String[] { "a", "b", "c" }) {
+                        publisher.publish(NatsMessage.builder()
+                            .subject(subjectName + "." + key)
+                            .data(Integer.toString(i))
+                            .build());
+                    }
+                }
+
+                final Map<String, List<Integer>> receivedBySubject = new ConcurrentHashMap<>();
+                final Map<String, Thread> threadBySubject = new ConcurrentHashMap<>();
+                final CountDownLatch receivedLatch = new CountDownLatch(30);
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(connection)
+                    .setSubject(subjectName + ".>")
+                    .setDurable(this.randomDurableName());
+
+                final NatsReliableStreamDispatcher dispatcher = new NatsReliableStreamDispatcher(subscriber)
+                    .setWorkers(4)
+                    .setBatchSize(5)
+                    .setPollTime(Duration.ofSeconds(1))
+                    .setOrderingKey(NatsReliableStreamDispatcher.bySubject())
+                    .setHandler(message -> {
+                        // every message of a subject must be handled by the same worker
+                        final Thread existingThread = threadBySubject.putIfAbsent(message.getSubject(), Thread.currentThread());
+                        if (existingThread != null && existingThread != Thread.currentThread()) {
+                            log.error("Subject {} handled by multiple workers", message.getSubject());
+                        }
+                        receivedBySubject.computeIfAbsent(message.getSubject(), k -> new CopyOnWriteArrayList<>())
+                            .add(Integer.parseInt(message.getString()));
+                        message.ack();
+                        receivedLatch.countDown();
+                    })
+                    .start();
+
+                if (!receivedLatch.await(10, TimeUnit.SECONDS)) {
+                    fail("Dispatcher did not process all messages");
+                }
+
+                dispatcher.stop();
+
+                assertThat(receivedBySubject.size(), is(3));
+                assertThat(threadBySubject.size(), is(3));
+                for (List<Integer> values : receivedBySubject.values()) {
+                    assertThat(values, hasSize(10));
+                    for (int i = 0; i < 10; i++) {
+                        assertThat(values.get(i), is(i));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void handlerErrorOrInterruptDoesNotKillWorker() throws Exception {
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                final String subjectName = this.randomSubjectName();
+
+                createWorkQueueStream(connection, this.randomStreamName(), subjectName);
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .start();
+
+                for (int i = 0; i < 5; i++) {
+                    publisher.publish(NatsMessage.builder()
+                        .subject(subjectName)
+                        .data("Hello " + i)
+                        .build());
+                }
+
+                final CountDownLatch receivedLatch = new CountDownLatch(5);
+
+                // a single worker, so if it dies nothing else would ever be handled
+                final NatsReliableStreamDispatcher dispatcher = new NatsReliableStreamDispatcher(
+                        new NatsReliableStreamPullSubscriber(connection)
+                            .setSubject(subjectName)
+                            .setDurable(this.randomDurableName()))
+                    .setWorkers(1)
+                    .setBatchSize(5)
+                    .setPollTime(Duration.ofSeconds(1))
+                    .setHandler(message -> {
+                        message.ack();
+                        receivedLatch.countDown();
+                        if (receivedLatch.getCount() % 2 == 0) {
+                            // interrupted, w/ the interrupt still set on the worker thread
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedException("handler interrupted for " + message.getString());
+                        }
+                        throw new AssertionError("handler failed for " + message.getString());
+                    })
+                    .start();
+
+                if (!receivedLatch.await(10, TimeUnit.SECONDS)) {
+                    fail("Dispatcher worker did not survive its handler throwing an Error or InterruptedException");
+                }
+
+                dispatcher.stop();
+            }
+        }
+    }
+
+    @Test
+    void dispatchUnorderedToAllWorkers() throws Exception {
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                final String subjectName = this.randomSubjectName();
+
+                createWorkQueueStream(connection, this.randomStreamName(), subjectName);
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .start();
+
+                for (int i = 0; i < 20; i++) {
+                    publisher.publish(NatsMessage.builder()
+                        .subject(subjectName)
+                        .data("Hello " + i)
+                        .build());
+                }
+
+                final Map<Thread, Boolean> workerThreads = new ConcurrentHashMap<>();
+                final CountDownLatch receivedLatch = new CountDownLatch(20);
+
+                final NatsReliableStreamDispatcher dispatcher = new NatsReliableStreamDispatcher(
+                        new NatsReliableStreamPullSubscriber(connection)
+                            .setSubject(subjectName)
+                            .setDurable(this.randomDurableName()))
+                    .setWorkers(4)
+                    .setBatchSize(20)
+                    .setPollTime(Duration.ofSeconds(1))
+                    .setHandler(message -> {
+                        workerThreads.put(Thread.currentThread(), Boolean.TRUE);
+                        // simulate work, so that the other workers pick up messages too
+                        Thread.sleep(50L);
+                        message.ack();
+                        receivedLatch.countDown();
+                    })
+                    .start();
+
+                if (!receivedLatch.await(10, TimeUnit.SECONDS)) {
+                    fail("Dispatcher did not process all messages");
+                }
+
+                dispatcher.stop();
+
+                assertThat(workerThreads.size(), greaterThan(1));
+            }
+        }
+    }
+
+}
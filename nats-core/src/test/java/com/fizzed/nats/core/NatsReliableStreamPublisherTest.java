@@ -3,13 +3,27 @@ package com.fizzed.nats.core;
 import io.nats.NatsServerRunner;
 import io.nats.client.Connection;
 import io.nats.client.Message;
+import io.nats.client.api.ObjectStoreConfiguration;
 import io.nats.client.api.PublishAck;
+import io.nats.client.api.StorageType;
+import io.nats.client.impl.Headers;
 import io.nats.client.impl.NatsMessage;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static com.fizzed.nats.core.NatsHelper.createWorkQueueStream;
 import static org.hamcrest.CoreMatchers.*;
@@ -173,4 +187,318 @@ public class NatsReliableStreamPublisherTest extends NatsBaseTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    void publishAsyncWindowed() throws Exception {
+        final String streamName = this.randomStreamName();
+        final String subjectName = this.randomSubjectName();
+
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                // create stream for work queue
+                createWorkQueueStream(connection, streamName, subjectName);
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .setMaxInFlight(2)
+                    .start();
+
+                final List<CompletableFuture<PublishAck>> futures = new ArrayList<>();
+                for (int i = 0; i < 10; i++) {
+                    futures.add(publisher.publishAsync(NatsMessage.builder()
+                        .subject(subjectName)
+                        .data("Hello " + i)
+                        .build()));
+                }
+
+                // the window never allows more than 2 in flight, but every publish should be acked in order
+                for (int i = 0; i < 10; i++) {
+                    final PublishAck ack = futures.get(i).get(5, TimeUnit.SECONDS);
+                    assertThat(ack.getStream(), is(streamName));
+                    assertThat(ack.getSeqno(), is(i + 1L));
+                }
+
+                assertThat(publisher.getInFlight(), is(0));
+            }
+        }
+    }
+
+    @Test
+    void publishAsyncWithConnectionClosed() throws Exception {
+        final String streamName = this.randomStreamName();
+        final String subjectName = this.randomSubjectName();
+
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                // create stream for work queue
+                createWorkQueueStream(connection, streamName, subjectName);
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .start();
+
+                connection.close();
+
+                try {
+                    publisher.publishAsync(NatsMessage.builder()
+                        .subject(subjectName)
+                        .data("Hello 1")
+                        .build()).get(5, TimeUnit.SECONDS);
+                    fail("Expected publishAsync() to have failed");
+                } catch (NatsUnrecoverableException e) {
+                    // expected
+                } catch (ExecutionException e) {
+                    assertThat(e.getCause(), instanceOf(NatsUnrecoverableException.class));
+                }
+
+                // the window should not leak room after a failure
+                assertThat(publisher.getInFlight(), is(0));
+            }
+        }
+    }
+
+    @Test
+    void publishAll() throws Exception {
+        final String streamName = this.randomStreamName();
+        final String subjectName = this.randomSubjectName();
+
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                // create stream for work queue
+                createWorkQueueStream(connection, streamName, subjectName);
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .setMaxInFlight(10)
+                    .start();
+
+                final List<Message> messages = new ArrayList<>();
+                for (int i = 0; i < 100; i++) {
+                    messages.add(NatsMessage.builder()
+                        .subject(subjectName)
+                        .data("Hello " + i)
+                        .build());
+                }
+
+                // a message to a subject w/o a stream will fail (no responders), but should not fail the rest
+                messages.add(50, NatsMessage.builder()
+                    .subject(this.randomSubjectName())
+                    .data("No stream")
+                    .build());
+
+                final List<NatsPublishResult> results = publisher.publishAll(messages);
+
+                assertThat(results.size(), is(101));
+
+                long expectedSeqNo = 1L;
+                for (int i = 0; i < results.size(); i++) {
+                    final NatsPublishResult result = results.get(i);
+                    assertThat(result.getMessage(), is(messages.get(i)));
+                    if (i == 50) {
+                        assertThat(result.isSuccess(), is(false));
+                        assertThat(result.getException(), is(not(nullValue())));
+                    } else {
+                        assertThat(result.isSuccess(), is(true));
+                        assertThat(result.getAck().getSeqno(), is(expectedSeqNo++));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void publishWithCompression() throws Exception {
+        final String streamName = this.randomStreamName();
+        final String subjectName = this.randomSubjectName();
+
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                // create stream for work queue
+                createWorkQueueStream(connection, streamName, subjectName);
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .setCompressionThreshold(1024)
+                    .start();
+
+                final StringBuilder large = new StringBuilder();
+                while (large.length() < 10000) {
+                    large.append("{\"hello\":\"world\"}");
+                }
+
+                publisher.publish(NatsMessage.builder()
+                    .subject(subjectName)
+                    .data(large.toString())
+                    .build());
+
+                publisher.publish(NatsMessage.builder()
+                    .subject(subjectName)
+                    .data("Hello small")
+                    .build());
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(connection)
+                    .setSubject(subjectName)
+                    .setDurable(this.randomDurableName())
+                    .start();
+
+                final List<NatsReliableMessage> messages = subscriber.nextMessages(2, Duration.ofSeconds(5));
+
+                assertThat(messages.size(), is(2));
+
+                // the large message is compressed on the wire, but transparently decompressed
+                assertThat(NatsCompression.isCompressed(messages.get(0).unwrap()), is(true));
+                assertThat(messages.get(0).unwrap().getData().length < large.length(), is(true));
+                assertThat(messages.get(0).getString(), is(large.toString()));
+
+                // the small message is below the threshold, so it is left as-is
+                assertThat(NatsCompression.isCompressed(messages.get(1).unwrap()), is(false));
+                assertThat(messages.get(1).getString(), is("Hello small"));
+
+                for (NatsReliableMessage message : messages) {
+                    message.ack();
+                }
+
+                subscriber.stop();
+            }
+        }
+    }
+
+    @Test
+    void publishStreamWithClaimCheck() throws Exception {
+        final String streamName = this.randomStreamName();
+        final String subjectName = this.randomSubjectName();
+        final String bucket = "bucket-" + this.randomStreamName();
+
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                // create stream for work queue
+                createWorkQueueStream(connection, streamName, subjectName);
+
+                connection.objectStoreManagement().create(ObjectStoreConfiguration.builder(bucket)
+                    .storageType(StorageType.Memory)
+                    .build());
+
+                final NatsClaimCheck claimCheck = new NatsClaimCheck(connection, bucket)
+                    .setChunkSize(16 * 1024)
+                    .start();
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .setClaimCheck(claimCheck)
+                    .start();
+
+                // larger than the default max payload of 1MB, so it could never be published as a single message
+                final byte[] large = new byte[3 * 1024 * 1024 + 123];
+                new Random(1L).nextBytes(large);
+
+                publisher.publishStream(subjectName, new ByteArrayInputStream(large));
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(connection)
+                    .setSubject(subjectName)
+                    .setDurable(this.randomDurableName())
+                    .setClaimCheck(claimCheck)
+                    .start();
+
+                final NatsReliableMessage message = subscriber.nextMessage(Duration.ofSeconds(5));
+
+                // only the small reference message is in the stream
+                assertThat(message.isClaimCheck(), is(true));
+                assertThat(message.getDataLength(), is(0));
+
+                final ByteArrayOutputStream output = new ByteArrayOutputStream();
+                try (InputStream input = message.openStream()) {
+                    final byte[] buffer = new byte[5000];
+                    int read;
+                    while ((read = input.read(buffer)) >= 0) {
+                        output.write(buffer, 0, read);
+                    }
+                }
+
+                assertThat(Arrays.equals(output.toByteArray(), large), is(true));
+
+                message.ack();
+
+                claimCheck.delete(message.unwrap());
+
+                try {
+                    message.openStream();
+                    fail("Expected openStream() to have failed");
+                } catch (FileNotFoundException e) {
+                    // expected
+                }
+
+                subscriber.stop();
+            }
+        }
+    }
+
+    @Test
+    void publishIdempotent() throws Exception {
+        final String streamName = this.randomStreamName();
+        final String subjectName = this.randomSubjectName();
+
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                // create stream for work queue
+                createWorkQueueStream(connection, streamName, subjectName);
+
+                final NatsMetrics metrics = new NatsMetrics();
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .setIdempotent(true)
+                    .setMaxRetries(2)
+                    .setRetryBackoff(new NatsBackoff(Duration.ofMillis(1L), Duration.ofMillis(5L)))
+                    .setPublishTimeout(Duration.ofMillis(500L))
+                    .setMetrics(metrics)
+                    .start();
+
+                // a message w/ its own id is published as-is, and a retry of it is discarded by the stream
+                final Headers headers = new Headers();
+                headers.put("Nats-Msg-Id", "order-1");
+
+                final Message message = NatsMessage.builder()
+                    .subject(subjectName)
+                    .headers(headers)
+                    .data("Hello 1")
+                    .build();
+
+                assertThat(publisher.publish(message).isDuplicate(), is(false));
+                assertThat(publisher.publish(message).isDuplicate(), is(true));
+
+                // a message w/o an id is stamped with one
+                publisher.publish(NatsMessage.builder()
+                    .subject(subjectName)
+                    .data("Hello 2")
+                    .build());
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(connection)
+                    .setSubject(subjectName)
+                    .setDurable(this.randomDurableName())
+                    .start();
+
+                final List<NatsReliableMessage> messages = subscriber.nextMessages(3, Duration.ofSeconds(2));
+
+                assertThat(messages.size(), is(2));
+                assertThat(messages.get(0).getHeaders().getFirst("Nats-Msg-Id"), is("order-1"));
+                assertThat(messages.get(1).getString(), is("Hello 2"));
+                assertThat(messages.get(1).getHeaders().getFirst("Nats-Msg-Id"), is(notNullValue()));
+
+                for (NatsReliableMessage m : messages) {
+                    m.ack();
+                }
+
+                subscriber.stop();
+
+                nats.shutdown(true);
+
+                // recoverable failures are retried, but eventually still fail
+                try {
+                    publisher.publish(NatsMessage.builder()
+                        .subject(subjectName)
+                        .data("Hello 3")
+                        .build());
+                    fail("Expected publish() to have failed");
+                } catch (NatsRecoverableException e) {
+                    // expected
+                }
+
+                assertThat(metrics.snapshot().getRecoverableExceptions(), is(3L));
+            }
+        }
+    }
+
+}
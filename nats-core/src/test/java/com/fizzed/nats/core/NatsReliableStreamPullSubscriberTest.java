@@ -9,8 +9,12 @@ import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
@@ -20,6 +24,7 @@ import static com.fizzed.nats.core.NatsHelper.createWorkQueueStream;
 import static com.fizzed.nats.core.NatsHelper.dumpMessage;
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.lessThan;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -274,6 +279,252 @@ class NatsReliableStreamPullSubscriberTest extends NatsBaseTest {
         }
     }
 
+    @Test
+    void nextMessagesHonorsBatchSize() throws Exception {
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                final String subjectName = this.randomSubjectName();
+
+                createWorkQueueStream(connection, this.randomStreamName(), subjectName);
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .start();
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(connection)
+                    .setSubject(subjectName)
+                    .setDurable(this.randomDurableName())
+                    .setFetchExpiresIn(Duration.ofSeconds(2))
+                    .start();
+
+                for (int i = 0; i < 7; i++) {
+                    publisher.publish(NatsMessage.builder()
+                        .subject(subjectName)
+                        .data("Hello " + i)
+                        .build());
+                }
+
+                // a full batch should be returned in a single fetch
+                final List<NatsReliableMessage> messages1 = subscriber.nextMessages(5, Duration.ofSeconds(10));
+
+                assertThat(messages1, hasSize(5));
+                assertThat(messages1.get(0).getString(), is("Hello 0"));
+                assertThat(messages1.get(4).getString(), is("Hello 4"));
+
+                for (NatsReliableMessage message : messages1) {
+                    message.ack();
+                }
+
+                // the remaining partial batch should be returned quickly
+                final long nowStart1 = System.currentTimeMillis();
+                final List<NatsReliableMessage> messages2 = subscriber.nextMessages(5, Duration.ofSeconds(10));
+                final long nowStart2 = System.currentTimeMillis();
+
+                assertThat(messages2, hasSize(2));
+                assertThat(messages2.get(0).getString(), is("Hello 5"));
+                assertThat(nowStart2 - nowStart1, lessThan(3000L));
+
+                for (NatsReliableMessage message : messages2) {
+                    message.ack();
+                }
+
+                // with nothing left, the fetch should re-pull (expires in 2 secs) until the poll time is exhausted
+                final List<NatsReliableMessage> messages3 = subscriber.nextMessages(5, Duration.ofMillis(2500L));
+
+                assertThat(messages3, is(nullValue()));
+            }
+        }
+    }
+
+    @Test
+    void nextMessagesWithPrefetching() throws Exception {
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                final String subjectName = this.randomSubjectName();
+
+                createWorkQueueStream(connection, this.randomStreamName(), subjectName);
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .start();
+
+                for (int i = 0; i < 5; i++) {
+                    publisher.publish(NatsMessage.builder()
+                        .subject(subjectName)
+                        .data("Hello " + i)
+                        .build());
+                }
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(connection)
+                    .setSubject(subjectName)
+                    .setDurable(this.randomDurableName())
+                    .setPrefetchSize(3)
+                    .setPrefetchPollTime(Duration.ofSeconds(1))
+                    .start();
+
+                // the background fetcher should fill the buffer, but never beyond its size
+                WaitFor.of(() -> subscriber.getPrefetchedCount() == 3)
+                    .requireMillis(5000L, 50L);
+
+                final NatsReliableMessage message1 = subscriber.nextMessage(Duration.ofSeconds(5));
+
+                assertThat(message1.getString(), is("Hello 0"));
+
+                message1.ack();
+
+                // room was made in the buffer, so it should be topped up again
+                WaitFor.of(() -> subscriber.getPrefetchedCount() == 3)
+                    .requireMillis(5000L, 50L);
+
+                // buffered messages are nak'ed by stop(), so they are redelivered rather than lost
+                subscriber.stop();
+
+                assertThat(subscriber.getPrefetchedCount(), is(0));
+
+                try {
+                    subscriber.nextMessage(Duration.ofSeconds(1));
+                    fail("Expected nextMessage() to have failed");
+                } catch (NatsUnrecoverableException e) {
+                    // expected
+                }
+
+                subscriber.start();
+
+                final Set<String> redelivered = new HashSet<>();
+                while (redelivered.size() < 4) {
+                    final NatsReliableMessage message = subscriber.nextMessage(Duration.ofSeconds(5));
+                    assertThat(message, is(not(nullValue())));
+                    redelivered.add(message.getString());
+                    message.ack();
+                }
+
+                assertThat(redelivered, containsInAnyOrder("Hello 1", "Hello 2", "Hello 3", "Hello 4"));
+
+                subscriber.stop();
+            }
+        }
+    }
+
+    @Test
+    void ackAsyncPipelined() throws Exception {
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                final String subjectName = this.randomSubjectName();
+
+                createWorkQueueStream(connection, this.randomStreamName(), subjectName);
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .start();
+
+                for (int i = 0; i < 5; i++) {
+                    publisher.publish(NatsMessage.builder()
+                        .subject(subjectName)
+                        .data("Hello " + i)
+                        .build());
+                }
+
+                final NatsAckTracker ackTracker = new NatsAckTracker(2, Duration.ofSeconds(5));
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(connection)
+                    .setSubject(subjectName)
+                    .setDurable(this.randomDurableName())
+                    .setAckTracker(ackTracker)
+                    .start();
+
+                final List<NatsReliableMessage> messages = subscriber.nextMessages(5, Duration.ofSeconds(5));
+
+                assertThat(messages, hasSize(5));
+
+                // only 2 acks can be in flight, so this also verifies the tracker applies backpressure correctly
+                final List<CompletableFuture<Void>> futures = new ArrayList<>();
+                for (NatsReliableMessage message : messages) {
+                    futures.add(message.ackAsync());
+                }
+
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+                assertThat(ackTracker.getInFlight(), is(0));
+
+                // already acked, so these are ignored (rather than sent after the ack, e.g. a nak would redeliver it)
+                messages.get(0).nak();
+                messages.get(1).term();
+                assertThat(messages.get(2).ackAsync().isDone(), is(true));
+
+                // all messages were acked, so nothing should be redelivered
+                final List<NatsReliableMessage> messages2 = subscriber.nextMessages(5, Duration.ofMillis(500L));
+
+                assertThat(messages2, is(nullValue()));
+            }
+        }
+    }
+
+    @Test
+    void metricsRecorded() throws Exception {
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                final String subjectName = this.randomSubjectName();
+
+                createWorkQueueStream(connection, this.randomStreamName(), subjectName);
+
+                final NatsMetrics metrics = new NatsMetrics();
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .setMetrics(metrics)
+                    .start();
+
+                for (int i = 0; i < 3; i++) {
+                    publisher.publish(NatsMessage.builder()
+                        .subject(subjectName)
+                        .data("Hello " + i)
+                        .build());
+                }
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(connection)
+                    .setSubject(subjectName)
+                    .setDurable(this.randomDurableName())
+                    .setMetrics(metrics)
+                    .start();
+
+                final List<NatsReliableMessage> messages = subscriber.nextMessages(4, Duration.ofSeconds(5));
+
+                assertThat(messages, hasSize(3));
+
+                messages.get(0).ack();
+                messages.get(1).ackSync(Duration.ofSeconds(5));
+                messages.get(2).ackSync(Duration.ofSeconds(5));
+
+                final List<NatsReliableMessage> messages2 = subscriber.nextMessages(1, Duration.ofMillis(500L));
+
+                assertThat(messages2, is(nullValue()));
+
+                subscriber.stop();
+
+                // nothing is active anymore, so this will fail
+                try {
+                    subscriber.nextMessage(Duration.ofSeconds(1));
+                    fail("Expected nextMessage() to have failed");
+                } catch (NatsUnrecoverableException e) {
+                    // expected
+                }
+
+                final NatsMetrics.Snapshot snapshot = metrics.snapshot();
+
+                log.info("Metrics:\n{}", snapshot);
+
+                assertThat(snapshot.getPublishLatency().getCount(), is(3L));
+                assertThat(snapshot.getFetchLatency().getCount(), is(2L));
+                assertThat(snapshot.getFetchRequested(), is(5L));
+                assertThat(snapshot.getFetchReceived(), is(3L));
+                assertThat(snapshot.getBatchFillRatio(), is(0.6d));
+                assertThat(snapshot.getEmptyPolls(), is(1L));
+                assertThat(snapshot.getAckLatency().getCount(), is(1L));
+                assertThat(snapshot.getAckSyncLatency().getCount(), is(2L));
+                assertThat(snapshot.getRecoverableExceptions(), is(0L));
+                assertThat(snapshot.getUnrecoverableExceptions(), is(1L));
+                assertThat(snapshot.getTimeouts(), is(0L));
+                assertThat(snapshot.getFetchLatency().getPercentileNanos(0.99d) <= snapshot.getFetchLatency().getMaxNanos(), is(true));
+            }
+        }
+    }
+
     @Test
     void nextMessageThreadInterruptedBeforeEnteringMethod() throws Exception {
         final String streamName = this.randomStreamName();
@@ -487,6 +738,177 @@ class NatsReliableStreamPullSubscriberTest extends NatsBaseTest {
         }
     }
 
+    @Test
+    void nextMessageAutoRecoveryAfterConnectionClosed() throws Exception {
+        final String streamName = this.randomStreamName();
+        final String subjectName = this.randomSubjectName();
+        final String durableName = this.randomDurableName();
+
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                // create stream for work queue
+                createWorkQueueStream(connection, streamName, subjectName);
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(connection)
+                    .setSubject(subjectName)
+                    .setDurable(durableName)
+                    .setAutoRecovery(true)
+                    .start();
+
+                // a consumer waiting when the connection is closed must not wait on a recovery that will never happen
+                final BlockingDeque<Object> results = new LinkedBlockingDeque<>();
+                final Thread subscriberThread = new Thread(() -> {
+                    try {
+                        final NatsReliableMessage message = subscriber.nextMessage(Duration.ofSeconds(30));
+                        results.add(message != null ? message : "no message");
+                    } catch (Exception e) {
+                        results.add(e);
+                    }
+                });
+                subscriberThread.start();
+
+                Thread.sleep(1000L);
+
+                connection.close();
+
+                final Object result = results.poll(5, TimeUnit.SECONDS);
+
+                assertThat(result, instanceOf(NatsUnrecoverableException.class));
+                assertThat(subscriber.getState(), is(NatsSubscriberState.CLOSED));
+
+                // and neither should any later consumer
+                final long start = System.currentTimeMillis();
+                try {
+                    subscriber.nextMessage(Duration.ofSeconds(30));
+                    fail();
+                } catch (NatsUnrecoverableException e) {
+                    // expected
+                }
+                assertThat(System.currentTimeMillis() - start < 5000L, is(true));
+
+                subscriber.stop();
+            }
+        }
+    }
+
+    @Test
+    void nextMessageAutoRecoveryAfterServerShutdown() throws Exception {
+        final String streamName = this.randomStreamName();
+        final String subjectName = this.randomSubjectName();
+        final String durableName = this.randomDurableName();
+
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                // create stream for work queue
+                createWorkQueueStream(connection, streamName, subjectName);
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .start();
+
+                final NatsMetrics metrics = new NatsMetrics();
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(connection)
+                    .setSubject(subjectName)
+                    .setDurable(durableName)
+                    .setAutoRecovery(true)
+                    .setMetrics(metrics)
+                    .start();
+
+                nats.shutdown(true);
+
+                WaitFor.of(() -> !subscriber.isHealthy())
+                    .requireMillis(5000L, 100L);
+
+                // while the connection is down, there are simply no messages (rather than an exception)
+                final NatsReliableMessage message1 = subscriber.nextMessage(Duration.ofSeconds(1));
+
+                assertThat(message1, is(nullValue()));
+
+                // a consumer waiting during the outage should recover as soon as the server is back
+                final BlockingDeque<Object> results = new LinkedBlockingDeque<>();
+                final Thread subscriberThread = new Thread(() -> {
+                    try {
+                        final NatsReliableMessage message = subscriber.nextMessage(Duration.ofSeconds(30));
+                        results.add(message != null ? message : "no message");
+                    } catch (Exception e) {
+                        results.add(e);
+                    }
+                });
+                subscriberThread.start();
+
+                // give the consumer a chance to be waiting for the outage to end
+                Thread.sleep(1000L);
+
+                try (NatsServerRunner nats2 = this.buildNatsServerRunner()) {
+                    WaitFor.of(() -> connection.getStatus() == Connection.Status.CONNECTED)
+                        .requireMillis(10000L, 100L);
+
+                    publisher.publish(NatsMessage.builder()
+                        .subject(subjectName)
+                        .data("Hello 1")
+                        .build());
+
+                    final Object result = results.poll(30, TimeUnit.SECONDS);
+
+                    assertThat(result, instanceOf(NatsReliableMessage.class));
+
+                    final NatsReliableMessage message2 = (NatsReliableMessage)result;
+
+                    assertThat(message2.getString(), is("Hello 1"));
+
+                    message2.ackSync(Duration.ofSeconds(5));
+
+                    assertThat(metrics.snapshot().getRecoveryLatency().getCount() >= 1L, is(true));
+
+                    subscriber.stop();
+                }
+            }
+        }
+    }
+
+    @Test
+    void stateListener() throws Exception {
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                final String subjectName = this.randomSubjectName();
+
+                createWorkQueueStream(connection, this.randomStreamName(), subjectName);
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(connection)
+                    .setSubject(subjectName)
+                    .setDurable(this.randomDurableName());
+
+                final BlockingDeque<NatsSubscriberState> states = new LinkedBlockingDeque<>();
+
+                subscriber.addStateListener((s, previousState, state) -> states.add(state));
+
+                assertThat(subscriber.getState(), is(NatsSubscriberState.STOPPED));
+
+                subscriber.start();
+
+                assertThat(states.poll(5, TimeUnit.SECONDS), is(NatsSubscriberState.CONNECTED));
+                assertThat(subscriber.isHealthy(), is(true));
+
+                nats.shutdown(true);
+
+                assertThat(states.poll(5, TimeUnit.SECONDS), is(NatsSubscriberState.DISCONNECTED));
+                assertThat(subscriber.isHealthy(), is(false));
+                assertThat(subscriber.getStateTimestamp(), is(not(nullValue())));
+
+                try {
+                    subscriber.nextMessage(Duration.ofSeconds(1));
+                    fail("nextMessage() should have failed");
+                } catch (NatsRecoverableException e) {
+                    // expected
+                }
+
+                subscriber.stop();
+
+                assertThat(subscriber.getState(), is(NatsSubscriberState.STOPPED));
+            }
+        }
+    }
+
     @Test
     void nextMessageQueueDeletedDuringFetch() throws Exception {
         final String streamName = this.randomStreamName();
@@ -561,4 +983,60 @@ class NatsReliableStreamPullSubscriberTest extends NatsBaseTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    void redeliveryDedup() throws Exception {
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                final String subjectName = this.randomSubjectName();
+
+                createWorkQueueStream(connection, this.randomStreamName(), subjectName);
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .start();
+
+                for (int i = 0; i < 2; i++) {
+                    publisher.publish(NatsMessage.builder()
+                        .subject(subjectName)
+                        .data("Hello " + i)
+                        .build());
+                }
+
+                final NatsRedeliveryDedup dedup = new NatsRedeliveryDedup(100);
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(connection)
+                    .setSubject(subjectName)
+                    .setDurable(this.randomDurableName())
+                    .setRedeliveryDedup(dedup)
+                    .start();
+
+                final NatsReliableMessage message0 = subscriber.nextMessage(Duration.ofSeconds(5));
+                final NatsReliableMessage message1 = subscriber.nextMessage(Duration.ofSeconds(5));
+
+                assertThat(message0.getString(), is("Hello 0"));
+                assertThat(message1.getString(), is("Hello 1"));
+
+                // message 0 was processed but its ack was "lost", while message 1 was not processed at all
+                dedup.add(message0.unwrap().metaData().streamSequence());
+                message0.unwrap().nak();
+                message1.unwrap().nak();
+
+                NatsReliableMessage redelivered = null;
+                for (int i = 0; i < 5 && redelivered == null; i++) {
+                    redelivered = subscriber.nextMessage(Duration.ofSeconds(1));
+                }
+
+                // only the unprocessed message is returned again
+                assertThat(redelivered.getString(), is("Hello 1"));
+
+                redelivered.ack();
+
+                assertThat(subscriber.nextMessage(Duration.ofSeconds(1)), is(nullValue()));
+                assertThat(dedup.getDuplicateCount(), is(1L));
+                assertThat(dedup.contains(redelivered.unwrap().metaData().streamSequence()), is(true));
+
+                subscriber.stop();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.fizzed.nats.core;
+
+import io.nats.NatsServerRunner;
+import io.nats.client.Connection;
+import io.nats.client.impl.NatsMessage;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.fizzed.nats.core.NatsHelper.createWorkQueueStream;
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class NatsReliableStreamReactivePublisherTest extends NatsBaseTest {
+
+    @Test
+    void demandDrivesFetches() throws Exception {
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                final String subjectName = this.randomSubjectName();
+
+                createWorkQueueStream(connection, this.randomStreamName(), subjectName);
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .start();
+
+                for (int i = 0; i < 5; i++) {
+                    publisher.publish(NatsMessage.builder()
+                        .subject(subjectName)
+                        .data("Hello " + i)
+                        .build());
+                }
+
+                final NatsReliableStreamReactivePublisher reactivePublisher = new NatsReliableStreamReactivePublisher(
+                        new NatsReliableStreamPullSubscriber(connection)
+                            .setSubject(subjectName)
+                            .setDurable(this.randomDurableName()))
+                    .setPollTime(Duration.ofSeconds(1));
+
+                final BlockingQueue<NatsReliableMessage> received = new LinkedBlockingQueue<>();
+                final AtomicReference<Subscription> subscriptionRef = new AtomicReference<>();
+                final AtomicReference<Throwable> errorRef = new AtomicReference<>();
+
+                reactivePublisher.subscribe(new Subscriber<NatsReliableMessage>() {
+                    @Override
+                    public void onSubscribe(Subscription s) {
+                        subscriptionRef.set(s);
+                    }
+                    @Override
+                    public void onNext(NatsReliableMessage message) {
+                        received.add(message);
+                    }
+                    @Override
+                    public void onError(Throwable t) {
+                        errorRef.set(t);
+                    }
+                    @Override
+                    public void onComplete() {
+                        // never completes
+                    }
+                });
+
+                // nothing is fetched until there is demand
+                assertThat(received.poll(500L, TimeUnit.MILLISECONDS), is(nullValue()));
+
+                subscriptionRef.get().request(3);
+
+                for (int i = 0; i < 3; i++) {
+                    final NatsReliableMessage message = received.poll(5, TimeUnit.SECONDS);
+                    assertThat(message.getString(), is("Hello " + i));
+                    message.ack();
+                }
+
+                // demand is exhausted, so no more should be delivered
+                assertThat(received.poll(1500L, TimeUnit.MILLISECONDS), is(nullValue()));
+
+                subscriptionRef.get().request(2);
+
+                for (int i = 3; i < 5; i++) {
+                    final NatsReliableMessage message = received.poll(5, TimeUnit.SECONDS);
+                    assertThat(message.getString(), is("Hello " + i));
+                    message.ack();
+                }
+
+                subscriptionRef.get().cancel();
+
+                assertThat(errorRef.get(), is(nullValue()));
+            }
+        }
+    }
+
+    @Test
+    void invalidRequestSignaledByEmittingThread() throws Exception {
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                final String subjectName = this.randomSubjectName();
+
+                createWorkQueueStream(connection, this.randomStreamName(), subjectName);
+
+                final NatsReliableStreamReactivePublisher reactivePublisher = new NatsReliableStreamReactivePublisher(
+                        new NatsReliableStreamPullSubscriber(connection)
+                            .setSubject(subjectName)
+                            .setDurable(this.randomDurableName()))
+                    .setPollTime(Duration.ofSeconds(30));
+
+                final AtomicReference<Subscription> subscriptionRef = new AtomicReference<>();
+                final BlockingQueue<Throwable> errors = new LinkedBlockingQueue<>();
+                final AtomicReference<String> errorThreadName = new AtomicReference<>();
+
+                reactivePublisher.subscribe(new Subscriber<NatsReliableMessage>() {
+                    @Override
+                    public void onSubscribe(Subscription s) {
+                        subscriptionRef.set(s);
+                    }
+                    @Override
+                    public void onNext(NatsReliableMessage message) {
+                        // nothing is ever published
+                    }
+                    @Override
+                    public void onError(Throwable t) {
+                        errorThreadName.set(Thread.currentThread().getName());
+                        errors.add(t);
+                    }
+                    @Override
+                    public void onComplete() {
+                        // never completes
+                    }
+                });
+
+                // the emitting thread is waiting on a long fetch, but must still deliver the error promptly
+                subscriptionRef.get().request(1);
+                Thread.sleep(500L);
+                subscriptionRef.get().request(0);
+
+                final Throwable error = errors.poll(5, TimeUnit.SECONDS);
+
+                assertThat(error, instanceOf(IllegalArgumentException.class));
+                // rule 1.3: signaled by the emitting thread, not the thread that called request()
+                assertThat(errorThreadName.get().startsWith("nats-reactive-"), is(true));
+
+                // rule 1.7: only a single terminal signal
+                subscriptionRef.get().request(-1);
+                assertThat(errors.poll(500L, TimeUnit.MILLISECONDS), is(nullValue()));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.fizzed.nats.core;
+
+import io.nats.NatsServerRunner;
+import io.nats.client.Connection;
+import io.nats.client.JetStreamManagement;
+import io.nats.client.api.RetentionPolicy;
+import io.nats.client.api.StorageType;
+import io.nats.client.api.StreamConfiguration;
+import io.nats.client.impl.NatsMessage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class NatsReplayReaderTest extends NatsBaseTest {
+
+    @Test
+    void replayFromSequence() throws Exception {
+        final String streamName = this.randomStreamName();
+        final String subjectName = this.randomSubjectName();
+
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                // a work queue stream can't be replayed (messages are removed once acked), so we need a limits stream
+                final JetStreamManagement jsm = connection.jetStreamManagement();
+                jsm.addStream(StreamConfiguration.builder()
+                    .name(streamName)
+                    .storageType(StorageType.Memory)
+                    .subjects(subjectName)
+                    .retentionPolicy(RetentionPolicy.Limits)
+                    .build());
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .start();
+
+                for (int i = 1; i <= 10; i++) {
+                    publisher.publish(NatsMessage.builder()
+                        .subject(subjectName)
+                        .data("Hello " + i)
+                        .build());
+                }
+
+                // a deleted message leaves a gap in the stream sequence
+                jsm.deleteMessage(streamName, 5L);
+
+                final List<long[]> gaps = new ArrayList<>();
+                final List<Long> progress = new ArrayList<>();
+
+                final NatsReplayReader reader = new NatsReplayReader(connection)
+                    .setSubject(subjectName)
+                    .setStartSequence(3L)
+                    .setStopAtEnd(true)
+                    .setProgressInterval(2)
+                    .setListener(new NatsReplayListener() {
+                        @Override
+                        public void onProgress(long streamSequence, long pending) {
+                            progress.add(streamSequence);
+                        }
+
+                        @Override
+                        public void onGap(long fromSequence, long toSequence) {
+                            gaps.add(new long[] { fromSequence, toSequence });
+                        }
+                    })
+                    .start();
+
+                final List<String> values = new ArrayList<>();
+                List<NatsReliableMessage> messages;
+                while ((messages = reader.nextMessages(3, Duration.ofSeconds(5))) != null) {
+                    for (NatsReliableMessage message : messages) {
+                        values.add(message.getString());
+                    }
+                }
+
+                assertThat(values.size(), is(7));
+                assertThat(values.get(0), is("Hello 3"));
+                assertThat(values.get(2), is("Hello 6"));
+                assertThat(values.get(6), is("Hello 10"));
+                assertThat(reader.isCaughtUp(), is(true));
+                assertThat(reader.getLastSequence(), is(10L));
+                assertThat(reader.getPending(), is(0L));
+                assertThat(reader.getGapCount(), is(1L));
+                assertThat(gaps.size(), is(1));
+                assertThat(gaps.get(0)[0], is(5L));
+                assertThat(gaps.get(0)[1], is(5L));
+                assertThat(progress.get(progress.size() - 1), is(10L));
+
+                reader.stop();
+
+                try {
+                    reader.nextMessage(Duration.ofSeconds(1));
+                    fail("nextMessage() should have failed");
+                } catch (NatsUnrecoverableException e) {
+                    // expected
+                }
+            }
+        }
+    }
+
+    @Test
+    void replayStopsAtEndWithNothingToRead() throws Exception {
+        final String streamName = this.randomStreamName();
+        final String subjectName = this.randomSubjectName();
+
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                final JetStreamManagement jsm = connection.jetStreamManagement();
+                jsm.addStream(StreamConfiguration.builder()
+                    .name(streamName)
+                    .storageType(StorageType.Memory)
+                    .subjects(subjectName)
+                    .retentionPolicy(RetentionPolicy.Limits)
+                    .build());
+
+                // an empty stream never delivers a message to tell us we're caught up
+                final NatsReplayReader reader1 = new NatsReplayReader(connection)
+                    .setSubject(subjectName)
+                    .setStopAtEnd(true)
+                    .start();
+
+                assertThat(reader1.isCaughtUp(), is(true));
+                long start = System.currentTimeMillis();
+                assertThat(reader1.nextMessage(Duration.ofSeconds(5)), is(nullValue()));
+                assertThat(System.currentTimeMillis() - start < 1000L, is(true));
+
+                reader1.stop();
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .start();
+
+                for (int i = 1; i <= 2; i++) {
+                    publisher.publish(NatsMessage.builder()
+                        .subject(subjectName)
+                        .data("Hello " + i)
+                        .build());
+                }
+
+                // nor does starting past the end of the stream
+                final NatsReplayReader reader2 = new NatsReplayReader(connection)
+                    .setSubject(subjectName)
+                    .setStartSequence(10L)
+                    .setStopAtEnd(true)
+                    .start();
+
+                assertThat(reader2.isCaughtUp(), is(true));
+                start = System.currentTimeMillis();
+                assertThat(reader2.nextMessages(10, Duration.ofSeconds(5)), is(nullValue()));
+                assertThat(System.currentTimeMillis() - start < 1000L, is(true));
+
+                reader2.stop();
+            }
+        }
+    }
+
+}
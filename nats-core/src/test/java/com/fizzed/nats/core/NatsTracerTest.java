@@ -0,0 +1,68 @@
+package com.fizzed.nats.core;
+
+import io.nats.client.impl.NatsMessage;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class NatsTracerTest {
+    static private final Logger log = LoggerFactory.getLogger(NatsTracerTest.class);
+
+    @Test
+    void ringBuffer() {
+        final NatsTracer tracer = new NatsTracer()
+            .setRingBufferSize(3);
+
+        for (int i = 0; i < 5; i++) {
+            tracer.trace(log, "Traced message:\n{}", new NatsReliableMessage(NatsMessage.builder()
+                .subject("test")
+                .data("Hello " + i)
+                .build()));
+        }
+
+        // only the most recent are kept, oldest first
+        final List<String> traces = tracer.getRecentTraces();
+
+        assertThat(traces.size(), is(3));
+        assertThat(traces.get(0), containsString("Hello 2"));
+        assertThat(traces.get(2), containsString("Hello 4"));
+    }
+
+    @Test
+    void sampleRate() {
+        final NatsTracer tracer = new NatsTracer()
+            .setSampleRate(0.0d)
+            .setRingBufferSize(3);
+
+        tracer.trace(log, "Traced message:\n{}", NatsMessage.builder()
+            .subject("test")
+            .data("Hello")
+            .build());
+
+        assertThat(tracer.isSampled(), is(false));
+        assertThat(tracer.getRecentTraces().size(), is(0));
+    }
+
+    @Test
+    void truncatesOnCharacterBoundary() {
+        // each é is 2 bytes, so truncating at an odd length would split one in half
+        final String data = "ééééé";
+
+        final String dump = NatsHelper.dumpMessage(NatsMessage.builder()
+            .subject("test")
+            .data(data)
+            .build(), 5);
+
+        assertThat(dump, containsString(" éé\n"));
+        assertThat(dump, containsString("<truncated 6 bytes>"));
+        assertThat(NatsHelper.utf8Boundary(data.getBytes(StandardCharsets.UTF_8), 5), is(4));
+        assertThat(NatsHelper.utf8Boundary(data.getBytes(StandardCharsets.UTF_8), 20), is(10));
+    }
+
+}
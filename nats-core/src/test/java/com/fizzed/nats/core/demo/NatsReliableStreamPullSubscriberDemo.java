@@ -3,6 +3,7 @@ package com.fizzed.nats.core.demo;
 import com.fizzed.nats.core.NatsRecoverableException;
 import com.fizzed.nats.core.NatsReliableMessage;
 import com.fizzed.nats.core.NatsReliableStreamPullSubscriber;
+import com.fizzed.nats.core.NatsTracer;
 import com.fizzed.nats.core.NatsUnrecoverableException;
 import io.nats.client.*;
 import org.slf4j.Logger;
@@ -10,10 +11,9 @@ import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
 
-import static com.fizzed.nats.core.NatsHelper.dumpMessage;
-
 public class NatsReliableStreamPullSubscriberDemo {
     static private final Logger log = LoggerFactory.getLogger(NatsReliableStreamPullSubscriberDemo.class);
+    static private final NatsTracer tracer = new NatsTracer();
 
     static public void main(String[] args) throws Exception {
         try (Connection connection = Nats.connect(Options.builder()
@@ -45,7 +45,7 @@ public class NatsReliableStreamPullSubscriberDemo {
                                 continue;   // keep searching for messages
                             }
 
-                            log.debug("Received message:\n{}", dumpMessage(message));
+                            tracer.trace(log, "Received message:\n{}", message);
 
                             message.ack();
                         } catch (NatsRecoverableException e) {
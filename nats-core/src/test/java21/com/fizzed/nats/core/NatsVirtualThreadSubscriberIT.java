@@ -0,0 +1,174 @@
+package com.fizzed.nats.core;
+
+import io.nats.NatsServerRunner;
+import io.nats.client.Connection;
+import io.nats.client.impl.NatsMessage;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.fizzed.nats.core.NatsHelper.createWorkQueueStream;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Verifies the interrupt-driven handling of the subscriber works when its running on virtual threads. These tests
+ * are only compiled and run on Java 21+, and are run by failsafe against the packaged multi-release jar, since the
+ * Java 21 version of NatsThreads is only loaded from a jar (never from target/classes).
+ */
+class NatsVirtualThreadSubscriberIT extends NatsBaseTest {
+    static private final Logger log = LoggerFactory.getLogger(NatsVirtualThreadSubscriberIT.class);
+
+    @Test
+    void newThreadIsVirtual() {
+        // if this fails, the tests are running against target/classes rather than the multi-release jar
+        assertThat(NatsThreads.isVirtualSupported(), is(true));
+        assertThat(NatsThreads.newThread("virtual", true, () -> {}).isVirtual(), is(true));
+        assertThat(NatsThreads.newThread("platform", false, () -> {}).isVirtual(), is(false));
+    }
+
+    @Test
+    void nextMessageThreadInterruptedDuringFetch() throws Exception {
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                final String subjectName = this.randomSubjectName();
+
+                createWorkQueueStream(connection, this.randomStreamName(), subjectName);
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(connection)
+                    .setSubject(subjectName)
+                    .setDurable(this.randomDurableName())
+                    .start();
+
+                final CountDownLatch nextMessageBeforeLatch = new CountDownLatch(1);
+                final CountDownLatch nextMessageInterruptedLatch = new CountDownLatch(1);
+
+                final Thread subscriberThread = Thread.ofVirtual().start(() -> {
+                    try {
+                        nextMessageBeforeLatch.countDown();
+                        subscriber.nextMessages(10, Duration.ofSeconds(10));
+                    } catch (InterruptedException e) {
+                        // expected
+                        nextMessageInterruptedLatch.countDown();
+                    } catch (Exception e) {
+                        log.error("Unexpected exception", e);
+                    }
+                });
+
+                assertThat(subscriberThread.isVirtual(), is(true));
+
+                nextMessageBeforeLatch.await();
+                Thread.sleep(1000L);
+
+                subscriberThread.interrupt();
+
+                if (!nextMessageInterruptedLatch.await(5, TimeUnit.SECONDS)) {
+                    fail("nextMessages() on a virtual thread did not honor the interrupt");
+                }
+            }
+        }
+    }
+
+    @Test
+    void nextMessageServerShutdownDuringFetch() throws Exception {
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                final String subjectName = this.randomSubjectName();
+
+                createWorkQueueStream(connection, this.randomStreamName(), subjectName);
+
+                final NatsReliableStreamPullSubscriber subscriber = new NatsReliableStreamPullSubscriber(connection)
+                    .setSubject(subjectName)
+                    .setDurable(this.randomDurableName())
+                    .start();
+
+                final CountDownLatch nextMessageBeforeLatch = new CountDownLatch(1);
+                final CountDownLatch nextMessageRecoverableLatch = new CountDownLatch(1);
+
+                // the connection listener interrupts the fetching thread, which must work for virtual threads too
+                final Thread subscriberThread = NatsThreads.newThread("virtual-subscriber", true, () -> {
+                    try {
+                        nextMessageBeforeLatch.countDown();
+                        subscriber.nextMessage(Duration.ofSeconds(20));
+                    } catch (NatsRecoverableException e) {
+                        // expected
+                        nextMessageRecoverableLatch.countDown();
+                    } catch (Exception e) {
+                        log.error("Unexpected exception", e);
+                    }
+                });
+
+                assertThat(subscriberThread.isVirtual(), is(true));
+
+                subscriberThread.start();
+
+                nextMessageBeforeLatch.await();
+                Thread.sleep(1000L);
+
+                nats.shutdown(true);
+
+                if (!nextMessageRecoverableLatch.await(5, TimeUnit.SECONDS)) {
+                    fail("nextMessage() on a virtual thread did not throw a recoverable exception");
+                }
+            }
+        }
+    }
+
+    @Test
+    void dispatcherWithVirtualThreads() throws Exception {
+        try (NatsServerRunner nats = this.buildNatsServerRunner()) {
+            try (Connection connection = this.connectNats(nats, true)) {
+                final String subjectName = this.randomSubjectName();
+
+                createWorkQueueStream(connection, this.randomStreamName(), subjectName + ".>");
+
+                final NatsReliableStreamPublisher publisher = new NatsReliableStreamPublisher(connection)
+                    .start();
+
+                for (int i = 0; i < 100; i++) {
+                    publisher.publish(NatsMessage.builder()
+                        .subject(subjectName + "." + i)
+                        .data("Hello " + i)
+                        .build());
+                }
+
+                final CountDownLatch receivedLatch = new CountDownLatch(100);
+                final AtomicInteger platformThreadCount = new AtomicInteger();
+
+                // 1000s of workers are cheap with virtual threads, and each worker blocks on ackSync()
+                final NatsReliableStreamDispatcher dispatcher = new NatsReliableStreamDispatcher(
+                        new NatsReliableStreamPullSubscriber(connection)
+                            .setSubject(subjectName + ".>")
+                            .setDurable(this.randomDurableName()))
+                    .setVirtualThreads(true)
+                    .setWorkers(2000)
+                    .setBatchSize(50)
+                    .setOrderingKey(NatsReliableStreamDispatcher.bySubject())
+                    .setHandler(message -> {
+                        // an assertion thrown here would only kill the worker, so its checked once all are received
+                        if (!Thread.currentThread().isVirtual()) {
+                            platformThreadCount.incrementAndGet();
+                        }
+                        message.ackSync(Duration.ofSeconds(5));
+                        receivedLatch.countDown();
+                    })
+                    .start();
+
+                if (!receivedLatch.await(10, TimeUnit.SECONDS)) {
+                    fail("Dispatcher did not process all messages");
+                }
+
+                assertThat(platformThreadCount.get(), is(0));
+
+                dispatcher.stop();
+            }
+        }
+    }
+
+}
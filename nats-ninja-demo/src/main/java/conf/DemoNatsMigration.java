@@ -1,6 +1,6 @@
 package conf;
 
-import com.fizzed.nats.core.NatsConnectionProvider;
+import com.fizzed.nats.core.NatsConnectionSource;
 import com.fizzed.nats.core.NatsHelper;
 import io.nats.client.Connection;
 import ninja.lifecycle.Start;
@@ -12,10 +12,10 @@ import javax.inject.Singleton;
 @Singleton
 public class DemoNatsMigration {
 
-    private final NatsConnectionProvider connectionProvider;
+    private final NatsConnectionSource connectionProvider;
 
     @Inject
-    public DemoNatsMigration(NinjaProperties ninjaProperties, NatsConnectionProvider connectionProvider) {
+    public DemoNatsMigration(NinjaProperties ninjaProperties, NatsConnectionSource connectionProvider) {
         this.connectionProvider = connectionProvider;
     }
     
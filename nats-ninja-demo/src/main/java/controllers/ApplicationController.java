@@ -5,7 +5,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
-import com.fizzed.nats.core.NatsConnectionProvider;
+import com.fizzed.nats.core.NatsConnectionSource;
 import com.fizzed.nats.core.NatsReliableStreamPublisher;
 import io.nats.client.api.PublishAck;
 import io.nats.client.impl.NatsMessage;
@@ -27,7 +27,7 @@ public class ApplicationController {
     @Inject
     public ApplicationController(
             RequestConsumers requestConsumers,
-            NatsConnectionProvider natsConnectionProvider) throws Exception {
+            NatsConnectionSource natsConnectionProvider) throws Exception {
         
         this.requestConsumers = requestConsumers;
         this.messageCounter = new AtomicInteger();
@@ -12,18 +12,21 @@ import com.fizzed.nats.core.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static com.fizzed.nats.core.NatsHelper.dumpMessage;
-
 public class RequestConsumer implements Worker {
     static private final Logger log = LoggerFactory.getLogger(RequestConsumer.class);
+    static private final NatsTracer tracer = new NatsTracer();
 
     final private NatsReliableStreamPullSubscriber subscriber;
     
     @Inject
-    public RequestConsumer(NatsConnectionProvider natsConnectionProvider) {
+    public RequestConsumer(NatsConnectionSource natsConnectionProvider) {
         this.subscriber = new NatsReliableStreamPullSubscriber(natsConnectionProvider)
             .setSubject("demo.requests.queue")
-            .setDurable("demo-requests-queue-consumer");
+            .setDurable("demo-requests-queue-consumer")
+            // resubscribes internally after a disconnect, rather than throwing a recoverable exception
+            .setAutoRecovery(true)
+            // keeps messages in progress while we process them, so they aren't redelivered if we take a while
+            .setInProgressTimer(NatsInProgressTimer.getDefault());
     }
 
     @Override
@@ -45,13 +48,13 @@ public class RequestConsumer implements Worker {
                         final NatsReliableMessage message = this.subscriber.nextMessage(Duration.ofSeconds(60));
 
                         if (message != null) {
-                            log.debug("Processing request \n{}", dumpMessage(message));
-
-                            message.ack();
+                            tracer.trace(log, "Processing request \n{}", message);
 
                             context.running("Processing request");
 
                             Thread.sleep(TimeDuration.seconds(5).asMillis());
+
+                            message.ack();
                         }
                     } catch (NatsRecoverableException e) {
                         log.warn("Recoverable exception (will wait a bit)", e);
@@ -1,10 +1,13 @@
 package com.fizzed.nats.ninja;
 
+import java.util.function.Supplier;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import com.fizzed.nats.core.NatsConnectionPool;
 import com.fizzed.nats.core.NatsConnectionProvider;
+import com.fizzed.nats.core.NatsConnectionSource;
 import io.nats.client.Connection;
 import io.nats.client.Nats;
 import io.nats.client.Options;
@@ -17,11 +20,12 @@ import org.slf4j.LoggerFactory;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
 @Singleton
-public class NinjaNatsConnectionProvider implements Provider<NatsConnectionProvider> {
+public class NinjaNatsConnectionProvider implements Provider<NatsConnectionSource> {
     static private final Logger log = LoggerFactory.getLogger(NinjaNatsConnectionProvider.class);
 
     private final Options options;
-    private NatsConnectionProvider connectionProvider;
+    private final int poolSize;
+    private NatsConnectionSource connectionProvider;
     
     @Inject
     public NinjaNatsConnectionProvider(NinjaProperties ninjaProperties) {
@@ -53,13 +57,18 @@ public class NinjaNatsConnectionProvider implements Provider<NatsConnectionProvi
             optionsBuilder.connectionName(connectionName);
         }
 
+        this.poolSize = ninjaProperties.getIntegerWithDefault("nats.pool_size", 1);
+        if (this.poolSize > 1) {
+            log.info("poolSize: {}", this.poolSize);
+        }
+
         this.options = optionsBuilder.build();
     }
     
     @Override
-    public NatsConnectionProvider get() {
+    public NatsConnectionSource get() {
         if (this.connectionProvider == null) {
-            this.connectionProvider = new NatsConnectionProvider(() -> {
+            final Supplier<Connection> connectionSupplier = () -> {
                 try {
                     log.info("Connecting to nats server...");
 
@@ -80,7 +89,13 @@ public class NinjaNatsConnectionProvider implements Provider<NatsConnectionProvi
                     log.error("Failed to connect to nats server!", e);
                     throw new RuntimeException(e);
                 }
-            });
+            };
+
+            if (this.poolSize > 1) {
+                this.connectionProvider = new NatsConnectionPool(connectionSupplier, this.poolSize);
+            } else {
+                this.connectionProvider = new NatsConnectionProvider(connectionSupplier);
+            }
         }
 
         return this.connectionProvider;
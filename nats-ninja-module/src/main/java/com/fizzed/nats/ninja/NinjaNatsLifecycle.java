@@ -4,7 +4,7 @@ import java.io.IOException;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
-import com.fizzed.nats.core.NatsConnectionProvider;
+import com.fizzed.nats.core.NatsConnectionSource;
 import io.nats.client.Connection;
 import ninja.lifecycle.Dispose;
 import ninja.lifecycle.Start;
@@ -13,10 +13,10 @@ import ninja.utils.NinjaProperties;
 @Singleton
 public class NinjaNatsLifecycle {
  
-    private final NatsConnectionProvider connectionProvider;
+    private final NatsConnectionSource connectionProvider;
     
     @Inject
-    public NinjaNatsLifecycle(NinjaProperties ninjaProperties, NatsConnectionProvider connectionProvider) {
+    public NinjaNatsLifecycle(NinjaProperties ninjaProperties, NatsConnectionSource connectionProvider) {
         this.connectionProvider = connectionProvider;
     }
     
@@ -28,9 +28,8 @@ public class NinjaNatsLifecycle {
 
     @Dispose
     public void stop() throws IOException, InterruptedException {
-        // connection a connection the first time will attempt a connection, which should verify we can connect
-        final Connection connection = this.connectionProvider.get();
-        connection.close();
+        // closes every connection the provider created (e.g. all of them if its a pool)
+        this.connectionProvider.close();
     }
     
 }
\ No newline at end of file
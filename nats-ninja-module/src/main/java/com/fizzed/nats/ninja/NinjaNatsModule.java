@@ -1,15 +1,28 @@
 package com.fizzed.nats.ninja;
 
 import com.fizzed.nats.core.NatsConnectionProvider;
+import com.fizzed.nats.core.NatsConnectionSource;
 import com.google.inject.AbstractModule;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
 import io.nats.client.Connection;
 
 public class NinjaNatsModule extends AbstractModule {
     
     @Override
     protected void configure() {
-        bind(NatsConnectionProvider.class).toProvider(NinjaNatsConnectionProvider.class);
+        bind(NatsConnectionSource.class).toProvider(NinjaNatsConnectionProvider.class);
         bind(NinjaNatsLifecycle.class);
     }
+
+    @Provides @Singleton
+    public NatsConnectionProvider provideNatsConnectionProvider(NatsConnectionSource connectionSource) {
+        // kept so apps injecting a NatsConnectionProvider still work, if the source is a pool they'll always be given
+        // the same connection from it (the pool itself is closed by the lifecycle, which closes all its connections)
+        if (connectionSource instanceof NatsConnectionProvider) {
+            return (NatsConnectionProvider)connectionSource;
+        }
+        return new NatsConnectionProvider(connectionSource);
+    }
     
 }
\ No newline at end of file